@@ -194,6 +194,12 @@ public class RedisClusterBuilder
         return this;
     }
 
+    /** Values smaller than this skip the pipeline steps (e.g. aren't worth compressing). */
+    public RedisClusterBuilder pipelineMinimumSizeBytes(final Integer pipelineMinimumSizeBytes) {
+        redisClusterConfig.setPipelineMinimumSizeBytes(pipelineMinimumSizeBytes);
+        return this;
+    }
+
     public RedisClusterBuilder coreExecutorService(final ExecutorService coreExecutorService) {
         redisClusterConfig.setCoreExecutorService(coreExecutorService);
         return this;
@@ -209,6 +215,83 @@ public class RedisClusterBuilder
         return this;
     }
 
+    /** Coalesces messages bound for the same node into a single publish per pipeline flush window. */
+    public RedisClusterBuilder messageBatching(final Boolean messageBatching) {
+        redisClusterConfig.setMessageBatching(messageBatching);
+        return this;
+    }
+
+    /** Note: all nodes in a cluster must agree on this setting and list messagingUris in the same order, since each
+     * node channel is only subscribed on the messaging server that owns it (and that server's fallback). */
+    public RedisClusterBuilder partitionedMessaging(final Boolean partitionedMessaging) {
+        redisClusterConfig.setPartitionedMessaging(partitionedMessaging);
+        return this;
+    }
+
+    /** When enabled (the default), cluster heartbeats use their own unpipelined connection to each messaging server
+     * instead of queueing behind node messages. */
+    public RedisClusterBuilder controlPlaneConnections(final Boolean controlPlaneConnections) {
+        redisClusterConfig.setControlPlaneConnections(controlPlaneConnections);
+        return this;
+    }
+
+    /** Maximum number of unacknowledged messages per messaging server; 0 leaves the outbound queue unbounded. */
+    public RedisClusterBuilder outboundQueueSize(final Integer outboundQueueSize) {
+        redisClusterConfig.setOutboundQueueSize(outboundQueueSize);
+        return this;
+    }
+
+    public RedisClusterBuilder outboundQueueOverflowPolicy(final RedisOutboundOverflowPolicy outboundQueueOverflowPolicy) {
+        redisClusterConfig.setOutboundQueueOverflowPolicy(outboundQueueOverflowPolicy);
+        return this;
+    }
+
+    /** Number of single-consumer lanes inbound messages are spread over; messages from one sender share a lane. */
+    public RedisClusterBuilder inboundDispatchLanes(final Integer inboundDispatchLanes) {
+        redisClusterConfig.setInboundDispatchLanes(inboundDispatchLanes);
+        return this;
+    }
+
+    public RedisClusterBuilder inboundDispatchBatchSize(final Integer inboundDispatchBatchSize) {
+        redisClusterConfig.setInboundDispatchBatchSize(inboundDispatchBatchSize);
+        return this;
+    }
+
+    /** Runs message and heartbeat listeners directly on the Redis event loop; only for very cheap listeners. */
+    public RedisClusterBuilder inboundDispatchInline(final Boolean inboundDispatchInline) {
+        redisClusterConfig.setInboundDispatchInline(inboundDispatchInline);
+        return this;
+    }
+
+    /** Delivers messages addressed to this node straight to its listener instead of round-tripping through Redis. The
+     * listener then gets the sender's own byte array (no serialization copy), on the inbound dispatcher. Off by default. */
+    public RedisClusterBuilder localMessageShortCircuit(final Boolean localMessageShortCircuit) {
+        redisClusterConfig.setLocalMessageShortCircuit(localMessageShortCircuit);
+        return this;
+    }
+
+    /** Only publish a message for several nodes on the multicast channel, which every node receives, when it has at
+     * least this many remote recipients; smaller sets get one (pipelined) unicast message per recipient. */
+    public RedisClusterBuilder multicastMinRecipients(final int multicastMinRecipients) {
+        redisClusterConfig.setMulticastMinRecipients(multicastMinRecipients);
+        return this;
+    }
+
+    /** Additionally require the remote recipients of a multicast to be at least this fraction of the nodes in the
+     * current cluster view, since every one of those nodes receives (and partly decodes) it. Defaults to 0.5. */
+    public RedisClusterBuilder multicastMinRecipientFraction(final double multicastMinRecipientFraction) {
+        redisClusterConfig.setMulticastMinRecipientFraction(multicastMinRecipientFraction);
+        return this;
+    }
+
+    /** Select the database given in each Redis URI (e.g. redis://host:6379/2) on every connection; by default all
+     * connections use database 0 whatever the URI says. Switching this on moves existing directories to the URI's
+     * database, so all nodes of a cluster must switch together. */
+    public RedisClusterBuilder selectUriDatabase(final Boolean selectUriDatabase) {
+        redisClusterConfig.setSelectUriDatabase(selectUriDatabase);
+        return this;
+    }
+
     public RedisClusterBuilder useElasticacheForDirectoryNodes(final Boolean useElasticache) {
         redisClusterConfig.setUseElasticacheForDirectoryNodes(useElasticache);
         return this;
@@ -241,6 +324,105 @@ public class RedisClusterBuilder
         return this;
     }
 
+    /** Heartbeat cadence used only while this node is joining the cluster or upgrading from CLIENT to SERVER. */
+    public RedisClusterBuilder joinHeartBeatIntervalMillis(final long joinHeartBeatIntervalMillis) {
+        redisClusterConfig.setJoinHeartBeatIntervalMillis(joinHeartBeatIntervalMillis);
+        return this;
+    }
+
+    /** Every Nth heartbeat carries the full set of node views; the others only carry what changed. Use 1 to always
+     * send full heartbeats. */
+    public RedisClusterBuilder fullHeartBeatInterval(final int fullHeartBeatInterval) {
+        redisClusterConfig.setFullHeartBeatInterval(fullHeartBeatInterval);
+        return this;
+    }
+
+    /** PHI_ACCRUAL derives each foreign node's death timeout from its observed heartbeat intervals, between
+     * phiMinimumTimeoutMillis and foreignNodeDeathTimeoutMillis. The local node always uses the fixed timeout. */
+    public RedisClusterBuilder failureDetector(final RedisFailureDetector failureDetector) {
+        redisClusterConfig.setFailureDetector(failureDetector);
+        return this;
+    }
+
+    public RedisClusterBuilder phiThreshold(final double phiThreshold) {
+        redisClusterConfig.setPhiThreshold(phiThreshold);
+        return this;
+    }
+
+    public RedisClusterBuilder phiWindowSize(final int phiWindowSize) {
+        redisClusterConfig.setPhiWindowSize(phiWindowSize);
+        return this;
+    }
+
+    public RedisClusterBuilder phiMinimumTimeoutMillis(final long phiMinimumTimeoutMillis) {
+        redisClusterConfig.setPhiMinimumTimeoutMillis(phiMinimumTimeoutMillis);
+        return this;
+    }
+
+    /** Note: all nodes in a cluster must use the same membership mode. Only BROADCAST sends delta heartbeats, so
+     * fullHeartBeatInterval doesn't apply to the other modes. */
+    public RedisClusterBuilder membershipMode(final RedisMembershipMode membershipMode) {
+        redisClusterConfig.setMembershipMode(membershipMode);
+        return this;
+    }
+
+    public RedisClusterBuilder gossipFanout(final int gossipFanout) {
+        redisClusterConfig.setGossipFanout(gossipFanout);
+        return this;
+    }
+
+    public RedisClusterBuilder gossipAntiEntropyInterval(final int gossipAntiEntropyInterval) {
+        redisClusterConfig.setGossipAntiEntropyInterval(gossipAntiEntropyInterval);
+        return this;
+    }
+
+    public RedisClusterBuilder leaseReconcileInterval(final int leaseReconcileInterval) {
+        redisClusterConfig.setLeaseReconcileInterval(leaseReconcileInterval);
+        return this;
+    }
+
+    /** With LEASE, have each node enable the keyspace notifications it relies on (CONFIG SET notify-keyspace-events)
+     * on the node directory servers. Off by default: the setting is server-wide, and managed Redis such as ElastiCache
+     * rejects CONFIG. Operators should instead enable at least "Kx" (expiries) on the servers, plus "$" so that rewrites
+     * are noticed before the next reconciliation. Without notifications, leases are only followed by reconciliation. */
+    public RedisClusterBuilder leaseConfigureKeyspaceNotifications(final boolean leaseConfigureKeyspaceNotifications) {
+        redisClusterConfig.setLeaseConfigureKeyspaceNotifications(leaseConfigureKeyspaceNotifications);
+        return this;
+    }
+
+    /** With STREAM, the approximate number of membership events kept in the stream (XADD MAXLEN ~). */
+    public RedisClusterBuilder streamMaxLength(final long streamMaxLength) {
+        redisClusterConfig.setStreamMaxLength(streamMaxLength);
+        return this;
+    }
+
+    /** With STREAM, how often the cluster as a whole sweeps the liveness set for expired nodes. Each node sweeps about
+     * this often times the number of running nodes. */
+    public RedisClusterBuilder streamSweepIntervalMillis(final long streamSweepIntervalMillis) {
+        redisClusterConfig.setStreamSweepIntervalMillis(streamSweepIntervalMillis);
+        return this;
+    }
+
+    /** With BROADCAST or GOSSIP, have running servers keep their latest heartbeat in a snapshot hash in the node
+     * directory, which joining nodes preload before their first heartbeat. Off by default. */
+    public RedisClusterBuilder bootstrapSnapshot(final boolean bootstrapSnapshot) {
+        redisClusterConfig.setBootstrapSnapshot(bootstrapSnapshot);
+        return this;
+    }
+
+    /** Collapse bursts of view changes: deliver a changed view once no other change followed it for this long. Dead
+     * nodes are delivered right away. 0 (the default) delivers every change as it happens. */
+    public RedisClusterBuilder viewDebounceMillis(final long viewDebounceMillis) {
+        redisClusterConfig.setViewDebounceMillis(viewDebounceMillis);
+        return this;
+    }
+
+    /** With viewDebounceMillis, the longest a changed view waits for a burst of changes to end. */
+    public RedisClusterBuilder viewMaxDelayMillis(final long viewMaxDelayMillis) {
+        redisClusterConfig.setViewMaxDelayMillis(viewMaxDelayMillis);
+        return this;
+    }
+
     public RedisClusterPeer build() {
         return new RedisClusterPeer(redisClusterConfig);
     }
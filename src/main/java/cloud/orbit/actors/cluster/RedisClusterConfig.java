@@ -68,16 +68,45 @@ public class RedisClusterConfig
     private ExecutorService redissonExecutorService = null;
     private Boolean shareEventLoop = false;
     private List<RedisPipelineStep> pipelineSteps = RedisBasicPipeline.defaultPipeline();
+    private Integer pipelineMinimumSizeBytes = 1024;
     private ExecutorService coreExecutorService = ForkJoinPool.commonPool();
     private Long redisPipelineFlushIntervalMillis = 10L;
     private Integer redisPipelineFlushCommandCount = 16;
+    private Boolean messageBatching = false;
+    private Boolean partitionedMessaging = false;
+    private Boolean controlPlaneConnections = true;
+    private Integer outboundQueueSize = 0;
+    private RedisOutboundOverflowPolicy outboundQueueOverflowPolicy = RedisOutboundOverflowPolicy.BLOCK;
+    private Integer inboundDispatchLanes = Runtime.getRuntime().availableProcessors();
+    private Integer inboundDispatchBatchSize = 64;
+    private Boolean inboundDispatchInline = false;
+    private Boolean localMessageShortCircuit = false;
+    private int multicastMinRecipients = 8; // fewer remote recipients are sent one unicast message each
+    private double multicastMinRecipientFraction = 0.5; // ...as are fewer than this fraction of the live nodes
     private Boolean useElasticache = false;
     private Boolean useCluster = false;
+    private Boolean selectUriDatabase = false; // honour the database number in Redis URIs; otherwise always use db 0
 
     private int minNodesInCluster = 1;
     private long foreignNodeDeathTimeoutMillis = 20_000;
     private long localNodeDeathTimeoutMillis = 10_000;
     private long deadNodeCullingDelayMillis = 24 * 60 * 60 * 1_000; // 24 hours
+    private long joinHeartBeatIntervalMillis = 100; // heartbeat cadence while joining or changing node type
+    private int fullHeartBeatInterval = 10; // every Nth heartbeat is a full snapshot, the rest are deltas
+    private RedisFailureDetector failureDetector = RedisFailureDetector.FIXED_TIMEOUT;
+    private double phiThreshold = 8.0;
+    private int phiWindowSize = 100; // number of heartbeat intervals remembered per node
+    private long phiMinimumTimeoutMillis = 3_000;
+    private RedisMembershipMode membershipMode = RedisMembershipMode.BROADCAST;
+    private int gossipFanout = 3;
+    private int gossipAntiEntropyInterval = 10; // with GOSSIP, every Nth heartbeat a node compares membership digests with a random peer
+    private int leaseReconcileInterval = 10; // with LEASE, every Nth pulse re-reads the set of leases
+    private boolean leaseConfigureKeyspaceNotifications = false; // CONFIG SET is server-wide, so operators opt in
+    private long streamMaxLength = 10_000; // with STREAM, approximate number of membership events kept
+    private long streamSweepIntervalMillis = 1_000; // with STREAM, how often the cluster as a whole sweeps for expired nodes
+    private boolean bootstrapSnapshot = false; // with BROADCAST or GOSSIP, servers keep a cluster snapshot for joiners
+    private long viewDebounceMillis = 0; // quiet period before a changed view is delivered; 0 delivers every change
+    private long viewMaxDelayMillis = 1_000; // longest a changed view waits for a burst of changes to end
 
     public ActorClassFinder getActorClassFinder()
     {
@@ -252,6 +281,16 @@ public class RedisClusterConfig
         this.pipelineSteps = Collections.unmodifiableList(pipelineSteps);
     }
 
+    public Integer getPipelineMinimumSizeBytes()
+    {
+        return pipelineMinimumSizeBytes;
+    }
+
+    public void setPipelineMinimumSizeBytes(final Integer pipelineMinimumSizeBytes)
+    {
+        this.pipelineMinimumSizeBytes = pipelineMinimumSizeBytes;
+    }
+
 
     public Integer getRedissonThreads()
     {
@@ -353,6 +392,126 @@ public class RedisClusterConfig
         this.redisPipelineFlushCommandCount = redisPipelineFlushCommandCount;
     }
 
+    public Boolean getMessageBatching()
+    {
+        return messageBatching;
+    }
+
+    public void setMessageBatching(final Boolean messageBatching)
+    {
+        this.messageBatching = messageBatching;
+    }
+
+    public Boolean getPartitionedMessaging()
+    {
+        return partitionedMessaging;
+    }
+
+    public void setPartitionedMessaging(final Boolean partitionedMessaging)
+    {
+        this.partitionedMessaging = partitionedMessaging;
+    }
+
+    public Boolean getControlPlaneConnections()
+    {
+        return controlPlaneConnections;
+    }
+
+    public void setControlPlaneConnections(final Boolean controlPlaneConnections)
+    {
+        this.controlPlaneConnections = controlPlaneConnections;
+    }
+
+    public Integer getOutboundQueueSize()
+    {
+        return outboundQueueSize;
+    }
+
+    public void setOutboundQueueSize(final Integer outboundQueueSize)
+    {
+        this.outboundQueueSize = outboundQueueSize;
+    }
+
+    public RedisOutboundOverflowPolicy getOutboundQueueOverflowPolicy()
+    {
+        return outboundQueueOverflowPolicy;
+    }
+
+    public void setOutboundQueueOverflowPolicy(final RedisOutboundOverflowPolicy outboundQueueOverflowPolicy)
+    {
+        this.outboundQueueOverflowPolicy = outboundQueueOverflowPolicy;
+    }
+
+    public Integer getInboundDispatchLanes()
+    {
+        return inboundDispatchLanes;
+    }
+
+    public void setInboundDispatchLanes(final Integer inboundDispatchLanes)
+    {
+        this.inboundDispatchLanes = inboundDispatchLanes;
+    }
+
+    public Integer getInboundDispatchBatchSize()
+    {
+        return inboundDispatchBatchSize;
+    }
+
+    public void setInboundDispatchBatchSize(final Integer inboundDispatchBatchSize)
+    {
+        this.inboundDispatchBatchSize = inboundDispatchBatchSize;
+    }
+
+    public Boolean getInboundDispatchInline()
+    {
+        return inboundDispatchInline;
+    }
+
+    public void setInboundDispatchInline(final Boolean inboundDispatchInline)
+    {
+        this.inboundDispatchInline = inboundDispatchInline;
+    }
+
+    public Boolean getLocalMessageShortCircuit()
+    {
+        return localMessageShortCircuit;
+    }
+
+    public void setLocalMessageShortCircuit(final Boolean localMessageShortCircuit)
+    {
+        this.localMessageShortCircuit = localMessageShortCircuit;
+    }
+
+    public int getMulticastMinRecipients()
+    {
+        return multicastMinRecipients;
+    }
+
+    public void setMulticastMinRecipients(final int multicastMinRecipients)
+    {
+        this.multicastMinRecipients = multicastMinRecipients;
+    }
+
+    public double getMulticastMinRecipientFraction()
+    {
+        return multicastMinRecipientFraction;
+    }
+
+    public void setMulticastMinRecipientFraction(final double multicastMinRecipientFraction)
+    {
+        this.multicastMinRecipientFraction = multicastMinRecipientFraction;
+    }
+
+    public Boolean getSelectUriDatabase()
+    {
+        return selectUriDatabase;
+    }
+
+    public void setSelectUriDatabase(final Boolean selectUriDatabase)
+    {
+        this.selectUriDatabase = selectUriDatabase;
+    }
+
     public void setUseElasticacheForDirectoryNodes(boolean elasticache)
     {
         this.useElasticache = elasticache;
@@ -413,6 +572,166 @@ public class RedisClusterConfig
         this.deadNodeCullingDelayMillis = deadNodeCullingDelayMillis;
     }
 
+    public RedisFailureDetector getFailureDetector()
+    {
+        return failureDetector;
+    }
+
+    public void setFailureDetector(final RedisFailureDetector failureDetector)
+    {
+        this.failureDetector = failureDetector;
+    }
+
+    public double getPhiThreshold()
+    {
+        return phiThreshold;
+    }
+
+    public void setPhiThreshold(final double phiThreshold)
+    {
+        this.phiThreshold = phiThreshold;
+    }
+
+    public int getPhiWindowSize()
+    {
+        return phiWindowSize;
+    }
+
+    public void setPhiWindowSize(final int phiWindowSize)
+    {
+        this.phiWindowSize = phiWindowSize;
+    }
+
+    public long getPhiMinimumTimeoutMillis()
+    {
+        return phiMinimumTimeoutMillis;
+    }
+
+    public void setPhiMinimumTimeoutMillis(final long phiMinimumTimeoutMillis)
+    {
+        this.phiMinimumTimeoutMillis = phiMinimumTimeoutMillis;
+    }
+
+    public RedisMembershipMode getMembershipMode()
+    {
+        return membershipMode;
+    }
+
+    public void setMembershipMode(final RedisMembershipMode membershipMode)
+    {
+        this.membershipMode = membershipMode;
+    }
+
+    public int getGossipFanout()
+    {
+        return gossipFanout;
+    }
+
+    public void setGossipFanout(final int gossipFanout)
+    {
+        this.gossipFanout = gossipFanout;
+    }
+
+    public int getGossipAntiEntropyInterval()
+    {
+        return gossipAntiEntropyInterval;
+    }
+
+    public void setGossipAntiEntropyInterval(final int gossipAntiEntropyInterval)
+    {
+        this.gossipAntiEntropyInterval = gossipAntiEntropyInterval;
+    }
+
+    public int getLeaseReconcileInterval()
+    {
+        return leaseReconcileInterval;
+    }
+
+    public void setLeaseReconcileInterval(final int leaseReconcileInterval)
+    {
+        this.leaseReconcileInterval = leaseReconcileInterval;
+    }
+
+    public boolean getLeaseConfigureKeyspaceNotifications()
+    {
+        return leaseConfigureKeyspaceNotifications;
+    }
+
+    public void setLeaseConfigureKeyspaceNotifications(final boolean leaseConfigureKeyspaceNotifications)
+    {
+        this.leaseConfigureKeyspaceNotifications = leaseConfigureKeyspaceNotifications;
+    }
+
+    public long getStreamMaxLength()
+    {
+        return streamMaxLength;
+    }
+
+    public void setStreamMaxLength(final long streamMaxLength)
+    {
+        this.streamMaxLength = streamMaxLength;
+    }
+
+    public long getStreamSweepIntervalMillis()
+    {
+        return streamSweepIntervalMillis;
+    }
+
+    public void setStreamSweepIntervalMillis(final long streamSweepIntervalMillis)
+    {
+        this.streamSweepIntervalMillis = streamSweepIntervalMillis;
+    }
+
+    public boolean getBootstrapSnapshot()
+    {
+        return bootstrapSnapshot;
+    }
+
+    public void setBootstrapSnapshot(final boolean bootstrapSnapshot)
+    {
+        this.bootstrapSnapshot = bootstrapSnapshot;
+    }
+
+    public long getViewDebounceMillis()
+    {
+        return viewDebounceMillis;
+    }
+
+    public void setViewDebounceMillis(final long viewDebounceMillis)
+    {
+        this.viewDebounceMillis = viewDebounceMillis;
+    }
+
+    public long getViewMaxDelayMillis()
+    {
+        return viewMaxDelayMillis;
+    }
+
+    public void setViewMaxDelayMillis(final long viewMaxDelayMillis)
+    {
+        this.viewMaxDelayMillis = viewMaxDelayMillis;
+    }
+
+    public int getFullHeartBeatInterval()
+    {
+        return fullHeartBeatInterval;
+    }
+
+    public void setFullHeartBeatInterval(final int fullHeartBeatInterval)
+    {
+        this.fullHeartBeatInterval = fullHeartBeatInterval;
+    }
+
+    public long getJoinHeartBeatIntervalMillis()
+    {
+        return joinHeartBeatIntervalMillis;
+    }
+
+    public void setJoinHeartBeatIntervalMillis(final long joinHeartBeatIntervalMillis)
+    {
+        this.joinHeartBeatIntervalMillis = joinHeartBeatIntervalMillis;
+    }
+
     public Integer getMessageSendAttempts()
     {
         return messageSendAttempts;
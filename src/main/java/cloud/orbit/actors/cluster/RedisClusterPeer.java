@@ -35,29 +35,49 @@ import cloud.orbit.actors.Actor;
 import cloud.orbit.actors.NodeState;
 import cloud.orbit.actors.NodeType;
 import cloud.orbit.actors.cluster.heartbeat.RedisClusterHeartBeat;
+import cloud.orbit.actors.cluster.impl.RedisClusterViewDebouncer;
 import cloud.orbit.actors.cluster.impl.RedisConnectionManager;
+import cloud.orbit.actors.cluster.impl.RedisHostableInterfaceRegistry;
+import cloud.orbit.actors.cluster.impl.RedisInboundDispatcher;
 import cloud.orbit.actors.cluster.impl.RedisKeyGenerator;
+import cloud.orbit.actors.cluster.impl.RedisMembershipLoop;
 import cloud.orbit.actors.cluster.impl.RedisMsg;
+import cloud.orbit.actors.cluster.impl.RedisMsgBatch;
+import cloud.orbit.actors.cluster.impl.RedisMsgBatcher;
+import cloud.orbit.actors.cluster.impl.RedisMulticastMsg;
 import cloud.orbit.actors.cluster.impl.RedisShardedMap;
+import cloud.orbit.actors.cluster.membership.RedisBroadcastMembershipBackend;
+import cloud.orbit.actors.cluster.membership.RedisClusterSnapshot;
+import cloud.orbit.actors.cluster.membership.RedisGossipMembershipBackend;
+import cloud.orbit.actors.cluster.membership.RedisLeaseMembershipBackend;
+import cloud.orbit.actors.cluster.membership.RedisMembershipBackend;
+import cloud.orbit.actors.cluster.membership.RedisStreamMembershipBackend;
 import cloud.orbit.actors.cluster.state.RedisClusterTracker;
 import cloud.orbit.concurrent.Task;
+import cloud.orbit.exception.UncheckedException;
 import cloud.orbit.tuples.Pair;
 import io.lettuce.core.pubsub.RedisPubSubAdapter;
 import io.lettuce.core.pubsub.RedisPubSubListener;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BooleanSupplier;
 import java.util.stream.Collectors;
 
 /**
  * The <code>RedisClusterPeer</code> implements a <code>ClusterPeer</code> backed by Redis.
  *
- * Nodes communicate about the state of the cluster by periodically sending heartbeats to a shared pubsub topic.
- * Heartbeats contain each node's own view of the cluster, as well as its own state. Updates that change the topology
+ * Nodes communicate about the state of the cluster by periodically sending heartbeats, either to a shared pubsub
+ * topic or to a few peers at a time (see <code>RedisMembershipMode</code>). Heartbeats contain each node's own view of the cluster, as well as its own state. Updates that change the topology
  * of the cluster (such as adding or losing nodes) are propagated up to Orbit's <code>Hosting</code> layer by the
  * <code>ViewListener</code>.
  *
@@ -73,12 +93,21 @@ public class RedisClusterPeer implements ClusterPeer
     private String clusterName;
     private RedisClusterConfig config;
     private RedisConnectionManager redisConnectionManager;
+    private RedisMsgBatcher redisMsgBatcher;
+    private final RedisInboundDispatcher inboundDispatcher;
+    private RedisMembershipLoop membershipLoop;
+    private RedisMembershipBackend membershipBackend;
+    private RedisClusterViewDebouncer viewDebouncer;
+    private RedisClusterSnapshot clusterSnapshot; // null unless bootstrapSnapshot applies to the membership mode
+    private RedisHostableInterfaceRegistry hostableInterfaceRegistry;
+    private final RedisClusterPeerMetrics metrics = new RedisClusterPeerMetrics();
 
     private final ConcurrentMap<String, ConcurrentMap<?, ?>> cacheManager = new ConcurrentHashMap<>();
     private final Object heartbeatLock = new Object();
     private final RedisClusterTracker clusterTracker;
 
     private volatile ClusterView latestClusterView;
+    private long latestClusterViewVersion = -1;
 
 
     public RedisClusterPeer(final RedisClusterConfig config)
@@ -92,6 +121,10 @@ public class RedisClusterPeer implements ClusterPeer
                 .collect(Collectors.toSet());
 
         this.clusterTracker = new RedisClusterTracker(config, this.localAddress, hostableInterfaces);
+        this.inboundDispatcher = new RedisInboundDispatcher(
+                config.getInboundDispatchLanes(),
+                config.getInboundDispatchBatchSize(),
+                config.getInboundDispatchInline() ? null : config.getCoreExecutorService());
     }
 
     @Override
@@ -126,38 +159,46 @@ public class RedisClusterPeer implements ClusterPeer
         this.clusterTracker.setPlacementGroup(placementGroup);
 
         this.clusterName = clusterName;
-        this.redisConnectionManager = new RedisConnectionManager(config);
+        this.redisConnectionManager = new RedisConnectionManager(config, localAddress.asUUID());
+        this.membershipLoop = new RedisMembershipLoop(clusterName, this::receiveHeartBeatInternal);
+        this.viewDebouncer = new RedisClusterViewDebouncer(clusterName, config.getViewDebounceMillis(), config.getViewMaxDelayMillis(), this::pushNewClusterView);
+        if ( config.getMessageBatching() )
+        {
+            this.redisMsgBatcher = new RedisMsgBatcher(redisConnectionManager, config.getRedisPipelineFlushIntervalMillis(), config.getRedisPipelineFlushCommandCount(),
+                    config.getOutboundQueueSize());
+        }
+
+        // Heartbeats only carry a hash of our hostable interfaces; publish the set itself before our first heartbeat.
+        this.hostableInterfaceRegistry = new RedisHostableInterfaceRegistry(clusterName, redisConnectionManager, config,
+                (hash, interfaces) -> membershipLoop.execute(() -> receiveHostableInterfacesInternal(hash, interfaces)));
+        hostableInterfaceRegistry.register(clusterTracker.getHostableInterfacesHash(), clusterTracker.getHostableInterfaces());
+        clusterTracker.setHostableInterfacesResolver(hostableInterfaceRegistry::resolve);
 
         this.clusterTracker.setNodeState(NodeState.RUNNING);
         this.clusterTracker.setNodeType(NodeType.CLIENT);
 
         /*
-        Note: Because the `RedisConnectionManager` maintains a single list of `LettucePubSubClient`s to be used for all
-        messaging, both node->node messages and node->cluster heartbeats are multiplexed over the same underlying TCP/
-        Redis connection. Messages must therefore be discriminated by the `RedisPubSubListener` instance based on either
-        the channel or the message object type -- here, we have chosen to discriminate based on message type.
+        Note: Heartbeats travel over dedicated control-plane connections (unless controlPlaneConnections is disabled),
+        while node->node messages share the pipelined `LettucePubSubClient`s. Either way, each `LettucePubSubClient`
+        routes a message only to the listener of its channel; the type checks below merely guard against foreign
+        publishers.
          */
 
-        // Subscribe to Cluster-HeartBeat channel
-        final String clusterChannelKey = getClusterChannelKey(clusterName);
-        logger.info("Joining topic '{}'", clusterChannelKey);
-        redisConnectionManager.subscribeToChannel(clusterChannelKey, new RedisPubSubAdapter<String, Object>()
+        // Start receiving heartbeats
+        this.membershipBackend = createMembershipBackend(clusterName);
+        membershipBackend.start(this::receiveHeartBeat);
+
+        // Preload what the running servers last said about the cluster, so that one round of heartbeats is enough.
+        final RedisMembershipMode membershipMode = config.getMembershipMode();
+        if ( config.getBootstrapSnapshot() && (membershipMode == RedisMembershipMode.BROADCAST || membershipMode == RedisMembershipMode.GOSSIP) )
         {
-            @Override
-            public void message(final String channel, final Object redisMsg)
-            {
-                if ( redisMsg instanceof RedisClusterHeartBeat )
-                {
-                    receiveHeartBeat((RedisClusterHeartBeat)redisMsg);
-                }
-            }
-        });
+            this.clusterSnapshot = new RedisClusterSnapshot(clusterName, localAddress.asUUID().toString(), redisConnectionManager, config);
+            clusterSnapshot.read((heartBeat, ageMillis) -> membershipLoop.execute(
+                    () -> receiveHeartBeatInternal(heartBeat, TimeUnit.MILLISECONDS.toNanos(ageMillis))));
+        }
 
         // Wait until the cluster agrees that this node is in the cluster.
-        while ( ! clusterTracker.isLocalNodeInCluster() && ! this.clusterTracker.isThisNodeDead() ) {
-            pulse();
-            sleep();
-        }
+        awaitHeartBeats(clusterTracker::isLocalNodeInCluster, 0);
 
         logger.info("Done joining the cluster as CLIENT");
 
@@ -166,7 +207,7 @@ public class RedisClusterPeer implements ClusterPeer
             logger.info("Upgrading from CLIENT to SERVER");
 
             clusterTracker.setNodeType(NodeType.SERVER);
-            pulse();
+            awaitHeartBeats(() -> clusterTracker.isLocalNodeInClusterAs(NodeType.SERVER), 0);
 
             logger.info("Done upgrading from CLIENT to SERVER");
         }
@@ -183,20 +224,79 @@ public class RedisClusterPeer implements ClusterPeer
                 {
                     receiveMessage((RedisMsg) redisMsg);
                 }
+                else if ( redisMsg instanceof RedisMsgBatch )
+                {
+                    ((RedisMsgBatch) redisMsg).getMessages().forEach(RedisClusterPeer.this::receiveMessage);
+                }
             }
         };
-        redisConnectionManager.subscribeToChannel(nodeKey, listener);
+        redisConnectionManager.subscribeToNodeChannel(nodeKey, listener);
+
+        // Subscribe to the cluster's multicast channel; each message names the nodes that should deliver it. When
+        // messaging is partitioned, the channel lives on its owning server (and fallback), like a node channel.
+        final String multicastKey = RedisKeyGenerator.multicastKey(clusterName);
+        redisConnectionManager.subscribeToNodeChannel(multicastKey, new RedisPubSubAdapter<String, Object>()
+        {
+            @Override
+            public void message(final String channel, final Object redisMsg)
+            {
+                if ( redisMsg instanceof RedisMulticastMsg )
+                {
+                    receiveMulticastMessage((RedisMulticastMsg) redisMsg);
+                }
+            }
+        });
 
         logger.info("Done joining cluster!");
         return Task.done();
     }
 
-    private void sleep()
+    /**
+     * Heartbeats at the (fast) join cadence until the condition holds, we are found dead, or the timeout (if positive)
+     * elapses. The condition is re-checked as soon as any heartbeat arrives rather than on the next pulse, so joins and
+     * state changes complete as soon as the cluster has caught up.
+     */
+    private void awaitHeartBeats(final BooleanSupplier condition, final long timeoutMillis)
     {
-        try
+        final long pulseIntervalNanos = TimeUnit.MILLISECONDS.toNanos(config.getJoinHeartBeatIntervalMillis());
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        long nextPulse = System.nanoTime();
+        while ( true )
         {
-            Thread.sleep(1000L);
-        } catch (InterruptedException ignored) {}
+            final CompletableFuture<Void> nextHeartBeat = clusterTracker.getNextHeartBeat();
+            if ( condition.getAsBoolean() || clusterTracker.isThisNodeDead() )
+            {
+                return;
+            }
+
+            final long now = System.nanoTime();
+            if ( timeoutMillis > 0 && now - deadline >= 0 )
+            {
+                logger.warn("Gave up waiting for the cluster after {}ms", timeoutMillis);
+                return;
+            }
+
+            if ( now - nextPulse >= 0 )
+            {
+                pulse();
+                nextPulse = now + pulseIntervalNanos;
+            }
+
+            try
+            {
+                nextHeartBeat.get(nextPulse - System.nanoTime(), TimeUnit.NANOSECONDS);
+            }
+            catch (TimeoutException ignored) {}
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            catch (ExecutionException e)
+            {
+                throw new UncheckedException(e);
+            }
+        }
     }
 
     @Override
@@ -210,36 +310,51 @@ public class RedisClusterPeer implements ClusterPeer
         redisConnectionManager.refreshMessagingTopology(messagingUris);
     }
 
-    private String getClusterChannelKey(final String clusterName) {
-        return RedisKeyGenerator.clusterKey(clusterName);
+    private RedisMembershipBackend createMembershipBackend(final String clusterName)
+    {
+        switch ( config.getMembershipMode() )
+        {
+            case GOSSIP:
+                return new RedisGossipMembershipBackend(clusterName, localAddress, redisConnectionManager, clusterTracker, config);
+            case LEASE:
+                return new RedisLeaseMembershipBackend(clusterName, localAddress, redisConnectionManager, clusterTracker, config);
+            case STREAM:
+                return new RedisStreamMembershipBackend(clusterName, localAddress, redisConnectionManager, clusterTracker, config);
+            case BROADCAST:
+            default:
+                return new RedisBroadcastMembershipBackend(clusterName, redisConnectionManager);
+        }
     }
 
     private void publishHeartBeat() {
-        final String clusterChannelKey = getClusterChannelKey(clusterName);
         final RedisClusterHeartBeat heartBeat;
         synchronized (heartbeatLock)
         {
             heartBeat = clusterTracker.createHeartBeat();
         }
-        redisConnectionManager.sendMessageToChannel(clusterChannelKey, heartBeat);
+        membershipBackend.publish(heartBeat);
+        if ( clusterSnapshot != null )
+        {
+            clusterSnapshot.write(heartBeat);
+        }
     }
 
     private void receiveHeartBeat(RedisClusterHeartBeat heartBeat) {
-        // Shift the work onto an Orbit (rather than Lettuce) thread.
-        Task.runAsync(() -> receiveHeartBeatInternal(heartBeat), config.getCoreExecutorService())
-                .exceptionally((e) ->
-                {
-                    logger.error("Error receiving heartbeat", e);
-                    return null;
-                });
+        // Shift the work onto the membership thread; stale heartbeats from the same sender are coalesced there.
+        membershipLoop.submit(heartBeat);
     }
 
     private void receiveHeartBeatInternal ( final RedisClusterHeartBeat heartBeat )
+    {
+        receiveHeartBeatInternal(heartBeat, 0);
+    }
+
+    private void receiveHeartBeatInternal ( final RedisClusterHeartBeat heartBeat, final long ageNanos )
     {
         logger.trace("receiveHeartBeat {}", heartBeat);
 
         // Apply the new HeartBeat message to our internal state.
-        boolean clusterViewChanged = clusterTracker.receiveHeartBeat(heartBeat);
+        boolean clusterViewChanged = clusterTracker.receiveHeartBeat(heartBeat, ageNanos);
 
         if ( clusterViewChanged )
         {
@@ -247,7 +362,22 @@ public class RedisClusterPeer implements ClusterPeer
             {
                 if (clusterTracker.isLocalNodeInCluster())
                 {
-                    pushNewClusterView();
+                    viewDebouncer.viewChanged();
+                }
+            }
+        }
+    }
+
+    private void receiveHostableInterfacesInternal ( final long hash, final Set<String> interfaces )
+    {
+        // Nodes only join the cluster view once their hostable interfaces are known.
+        if ( clusterTracker.receiveHostableInterfaces(hash, interfaces) )
+        {
+            synchronized (heartbeatLock)
+            {
+                if (clusterTracker.isLocalNodeInCluster())
+                {
+                    viewDebouncer.viewChanged();
                 }
             }
         }
@@ -256,25 +386,107 @@ public class RedisClusterPeer implements ClusterPeer
     @Override
     public void sendMessage(final NodeAddress toAddress, final byte[] message)
     {
+        sendMessageAsync(toAddress, message);
+    }
+
+    /**
+     * Sends a message, returning a task that completes with the number of subscribers that received it once Redis has
+     * acknowledged the publish. The task fails if the message could not be sent, e.g. because the outbound queue is
+     * full.
+     */
+    public Task<Long> sendMessageAsync(final NodeAddress toAddress, final byte[] message)
+    {
+        if ( config.getLocalMessageShortCircuit() && localAddress.equals(toAddress) )
+        {
+            metrics.incrementLocalMessagesSent();
+            receiveLocalMessage(message);
+            return Task.fromValue(1L);
+        }
+
+        metrics.incrementRemoteMessagesSent();
         final RedisMsg redisMsg = new RedisMsg(localAddress.asUUID(), message);
         final String targetNodeKey = RedisKeyGenerator.nodeKey(clusterName, toAddress.toString());
-        redisConnectionManager.sendMessageToChannel(targetNodeKey, redisMsg);
+        if ( redisMsgBatcher != null )
+        {
+            return Task.from(redisMsgBatcher.send(targetNodeKey, redisMsg));
+        }
+        else
+        {
+            return Task.from(redisConnectionManager.sendMessageToNodeChannel(targetNodeKey, redisMsg));
+        }
+    }
+
+    /**
+     * Sends the same message to several nodes. With at least <code>multicastMinRecipients</code> remote recipients, and
+     * at least <code>multicastMinRecipientFraction</code> of the nodes in the cluster view, the payload is published
+     * once on the cluster's multicast channel rather than once per recipient; messages for this node are delivered
+     * locally when short-circuiting is enabled.
+     */
+    public void sendMessage(final Collection<NodeAddress> toAddresses, final byte[] message)
+    {
+        sendMessageAsync(toAddresses, message);
+    }
+
+    public Task<?> sendMessageAsync(final Collection<NodeAddress> toAddresses, final byte[] message)
+    {
+        final List<UUID> recipientAddresses = new ArrayList<>(toAddresses.size());
+        for (final NodeAddress toAddress : toAddresses)
+        {
+            if ( config.getLocalMessageShortCircuit() && localAddress.equals(toAddress) )
+            {
+                metrics.incrementLocalMessagesSent();
+                receiveLocalMessage(message);
+            }
+            else
+            {
+                recipientAddresses.add(toAddress.asUUID());
+            }
+        }
+
+        if ( recipientAddresses.isEmpty() )
+        {
+            return Task.done();
+        }
+        final ClusterView clusterView = latestClusterView;
+        final int liveNodes = clusterView != null ? clusterView.getNodes().size() : 0;
+        final int minRecipients = Math.max(Math.max(config.getMulticastMinRecipients(), 2),
+                (int) Math.ceil(config.getMulticastMinRecipientFraction() * liveNodes));
+        if ( recipientAddresses.size() < minRecipients )
+        {
+            // Every node receives the multicast channel; for a few recipients, unicasts cost less bandwidth overall.
+            final List<Task<Long>> unicasts = new ArrayList<>(recipientAddresses.size());
+            for (final UUID recipientAddress : recipientAddresses)
+            {
+                unicasts.add(sendMessageAsync(new NodeAddressImpl(recipientAddress), message));
+            }
+            return Task.allOf(unicasts);
+        }
+
+        metrics.incrementMulticastMessagesSent();
+        final RedisMulticastMsg multicastMsg = new RedisMulticastMsg(localAddress.asUUID(), recipientAddresses, message);
+        return Task.from(redisConnectionManager.sendMessageToNodeChannel(RedisKeyGenerator.multicastKey(clusterName), multicastMsg));
+    }
+
+    void receiveMulticastMessage(final RedisMulticastMsg multicastMsg)
+    {
+        if ( multicastMsg.getRecipientAddresses().contains(localAddress.asUUID()) )
+        {
+            receiveMessage(new RedisMsg(multicastMsg.getSenderAddress(), multicastMsg.getMessageContents()));
+        }
     }
 
     public void receiveMessage(final RedisMsg rawMessage)
     {
-        Task.runAsync(() ->
-                {
-                    final NodeAddress nodeAddr = new NodeAddressImpl(rawMessage.getSenderAddress());
-                    messageListener.receive(nodeAddr, rawMessage.getMessageContents());
-                },
-                config.getCoreExecutorService()
-        )
-                .exceptionally((e) ->
-                {
-                    logger.error("Error receiving message", e);
-                    return null;
-                });
+        inboundDispatcher.dispatch(rawMessage.getSenderAddress(), () ->
+        {
+            final NodeAddress nodeAddr = new NodeAddressImpl(rawMessage.getSenderAddress());
+            messageListener.receive(nodeAddr, rawMessage.getMessageContents());
+        });
+    }
+
+    private void receiveLocalMessage(final byte[] message)
+    {
+        inboundDispatcher.dispatch(localAddress.asUUID(), () -> messageListener.receive(localAddress, message));
     }
 
     @Override
@@ -292,32 +504,58 @@ public class RedisClusterPeer implements ClusterPeer
         final boolean culledAnyNodes = clusterTracker.cullLongDeadNodes();
 
         // Note: This ordering is important. We should only update the cluster view if this node isn't dead.
+        // Dead nodes skip the debounce window, so that their actors fail over promptly.
         if ( ! deadNodes.isEmpty() ) {
             logger.info("Detected dead nodes {}; updating view", deadNodes);
-            pushNewClusterView();
+            viewDebouncer.deliverNow();
         } else if ( culledAnyNodes ) {
             logger.info("Culled some dead nodes; updating view");
-            pushNewClusterView();
+            viewDebouncer.viewChanged();
         }
 
         publishHeartBeat();
+        hostableInterfaceRegistry.refresh();
 
         return Task.done();
     }
 
     private void pushNewClusterView()
     {
-        final ClusterView clusterView = clusterTracker.createClusterView();
-        logger.info("ClusterView = {}", clusterView);
-        this.latestClusterView = clusterView;
-        viewListener.onViewChange(clusterView);
+        synchronized (heartbeatLock)
+        {
+            // The tracker only rebuilds its view when something changed, so there's nothing to push for a version
+            // we've already pushed.
+            final long clusterViewVersion = clusterTracker.getClusterViewVersion();
+            if ( clusterViewVersion == latestClusterViewVersion )
+            {
+                return;
+            }
+
+            final ClusterView clusterView = clusterTracker.createClusterView();
+            logger.info("ClusterView version {} with {} nodes", clusterViewVersion, clusterView.getNodes().size());
+            logger.debug("ClusterView = {}", clusterView);
+            this.latestClusterView = clusterView;
+            this.latestClusterViewVersion = clusterViewVersion;
+            viewListener.onViewChange(clusterView);
+        }
     }
 
     @Override
     public void leave()
     {
-        // Tell other nodes that this node has stopped
+        // Drain everything we still have to say before announcing our departure, so that the STOPPED heartbeat is
+        // the last thing other nodes hear from us.
+        if ( redisMsgBatcher != null )
+        {
+            redisMsgBatcher.shutdown();
+        }
+        redisConnectionManager.drainMessaging(config.getGeneralTimeout());
+
+        // Tell other nodes that this node has stopped; they drop it from their views as soon as they hear it.
         changeLocalNodeState(NodeState.STOPPED);
+        membershipBackend.shutdown();
+        membershipLoop.shutdown();
+        viewDebouncer.shutdown();
         redisConnectionManager.shutdownConnections();
     }
 
@@ -330,11 +568,7 @@ public class RedisClusterPeer implements ClusterPeer
             return;
         }
         this.clusterTracker.setNodeState(newNodeState);
-        do
-        {
-            pulse();
-            sleep();
-        } while ( ! this.clusterTracker.isThisNodeInState(newNodeState) && ! this.clusterTracker.isThisNodeDead() );
+        awaitHeartBeats(() -> this.clusterTracker.isThisNodeInState(newNodeState), config.getGeneralTimeout());
     }
 
     @Override
@@ -358,4 +592,9 @@ public class RedisClusterPeer implements ClusterPeer
     {
         return this.clusterTracker;
     }
+
+    public RedisClusterPeerMetrics getMetrics()
+    {
+        return this.metrics;
+    }
 }
@@ -0,0 +1,84 @@
+/*
+ Copyright (C) 2018 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package cloud.orbit.actors.cluster;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters describing the traffic handled by a <code>RedisClusterPeer</code>.
+ */
+public class RedisClusterPeerMetrics
+{
+    private final AtomicLong remoteMessagesSent = new AtomicLong();
+    private final AtomicLong localMessagesSent = new AtomicLong();
+    private final AtomicLong multicastMessagesSent = new AtomicLong();
+
+    /** Messages published to Redis for another node. */
+    public long getRemoteMessagesSent()
+    {
+        return remoteMessagesSent.get();
+    }
+
+    /** Messages addressed to this node that were delivered without going through Redis. */
+    public long getLocalMessagesSent()
+    {
+        return localMessagesSent.get();
+    }
+
+    /** Payloads published once on the multicast channel for several nodes. */
+    public long getMulticastMessagesSent()
+    {
+        return multicastMessagesSent.get();
+    }
+
+    void incrementRemoteMessagesSent()
+    {
+        remoteMessagesSent.incrementAndGet();
+    }
+
+    void incrementLocalMessagesSent()
+    {
+        localMessagesSent.incrementAndGet();
+    }
+
+    void incrementMulticastMessagesSent()
+    {
+        multicastMessagesSent.incrementAndGet();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "RedisClusterPeerMetrics{" +
+                "remoteMessagesSent=" + remoteMessagesSent +
+                ", localMessagesSent=" + localMessagesSent +
+                ", multicastMessagesSent=" + multicastMessagesSent +
+                '}';
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ Copyright (C) 2018 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package cloud.orbit.actors.cluster;
+
+/**
+ * How nodes exchange heartbeats. All nodes in a cluster must use the same mode.
+ */
+public enum RedisMembershipMode
+{
+    /** Every heartbeat is published to the cluster channel and processed by every node. */
+    BROADCAST,
+    /**
+     * Heartbeats go to <code>gossipFanout</code> random peers (plus nodes that just changed), and liveness spreads
+     * through the node views they carry. A node only contacts every member directly while it isn't in the cluster and
+     * when its own type or state changes; every <code>gossipAntiEntropyInterval</code> heartbeats, it compares a
+     * membership digest with one random peer. Nothing is broadcast on the cluster channel.
+     */
+    GOSSIP,
+    /**
+     * Each node keeps a lease key in the node directory, expiring after <code>foreignNodeDeathTimeoutMillis</code>.
+     * It renews the lease every pulse, but only rewrites it when its heartbeat changes. Peers learn about rewrites and
+     * expiries from keyspace notifications, and reconcile against a SCAN of the leases every
+     * <code>leaseReconcileInterval</code> pulses in case a notification was lost. The node directory servers must
+     * have keyspace notifications enabled (at least "K$x"), see <code>leaseConfigureKeyspaceNotifications</code>.
+     */
+    LEASE,
+    /**
+     * Heartbeats that change something are appended to a Redis Stream per cluster (trimmed to about
+     * <code>streamMaxLength</code> entries), after updating a snapshot hash of each node's latest heartbeat. A joining
+     * node reads the snapshot, then tails the stream from there with XREAD BLOCK, so it never misses a transition.
+     * Liveness is a sorted set of per-node deadlines renewed every pulse; whichever node removes an expired one
+     * appends the node's expiry to the stream. Needs Redis 5.
+     */
+    STREAM
+}
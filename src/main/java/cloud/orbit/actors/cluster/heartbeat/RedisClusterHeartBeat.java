@@ -33,6 +33,9 @@ import cloud.orbit.actors.NodeType;
 import cloud.orbit.actors.cluster.NodeAddress;
 
 import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
@@ -42,6 +45,13 @@ import java.util.Set;
  *
  * Received instances of this class are used to update a node's local <code>RedisClusterTracker</code>, which can also
  * produce new instances of this class to send back out to the cluster.
+ *
+ * A heartbeat is either a full snapshot of the sender's node views, or a delta against the heartbeat with sequence
+ * number <code>baseSequenceNumber</code>: it then only carries views whose type or state changed (or that are new), and
+ * the addresses of views that were removed. <code>viewDigest</code> is the digest of the sender's complete set of views,
+ * which lets receivers check that they applied the delta to the right base.
+ *
+ * Heartbeats from the same sender that queue up locally can be folded into one with <code>coalesce</code>.
  */
 public class RedisClusterHeartBeat implements Serializable
 {
@@ -54,10 +64,16 @@ public class RedisClusterHeartBeat implements Serializable
     private final int sequenceNumber;
 
     private final String placementGroup;
-    private final Set<String> hostableInterfaces;
+    private final long hostableInterfacesHash; // see RedisHostableInterfaceRegistry
 
     private final Map<NodeAddress, RedisClusterNodeView> nodeViews;
 
+    private final int baseSequenceNumber; // -1 for a full snapshot
+    private final Set<NodeAddress> removedNodes;
+    private final long viewDigest;
+
+    private final transient int coalescedHeartBeats; // earlier heartbeats folded into this one; never sent
+
     public RedisClusterHeartBeat(
             final NodeAddress nodeAddress,
             final String nodeName,
@@ -65,8 +81,43 @@ public class RedisClusterHeartBeat implements Serializable
             final NodeState nodeState,
             final int sequenceNumber,
             final String placementGroup,
-            final Set<String> hostableInterfaces,
+            final long hostableInterfacesHash,
             final Map<NodeAddress, RedisClusterNodeView> nodeViews)
+    {
+        this(nodeAddress, nodeName, nodeType, nodeState, sequenceNumber, placementGroup, hostableInterfacesHash, nodeViews,
+                -1, Collections.emptySet(), RedisClusterNodeView.digest(nodeViews.values()));
+    }
+
+    public RedisClusterHeartBeat(
+            final NodeAddress nodeAddress,
+            final String nodeName,
+            final NodeType nodeType,
+            final NodeState nodeState,
+            final int sequenceNumber,
+            final String placementGroup,
+            final long hostableInterfacesHash,
+            final Map<NodeAddress, RedisClusterNodeView> nodeViews,
+            final int baseSequenceNumber,
+            final Set<NodeAddress> removedNodes,
+            final long viewDigest)
+    {
+        this(nodeAddress, nodeName, nodeType, nodeState, sequenceNumber, placementGroup, hostableInterfacesHash, nodeViews,
+                baseSequenceNumber, removedNodes, viewDigest, 0);
+    }
+
+    private RedisClusterHeartBeat(
+            final NodeAddress nodeAddress,
+            final String nodeName,
+            final NodeType nodeType,
+            final NodeState nodeState,
+            final int sequenceNumber,
+            final String placementGroup,
+            final long hostableInterfacesHash,
+            final Map<NodeAddress, RedisClusterNodeView> nodeViews,
+            final int baseSequenceNumber,
+            final Set<NodeAddress> removedNodes,
+            final long viewDigest,
+            final int coalescedHeartBeats)
     {
         this.nodeAddress = nodeAddress;
         this.nodeName = nodeName;
@@ -77,9 +128,58 @@ public class RedisClusterHeartBeat implements Serializable
         this.sequenceNumber = sequenceNumber;
 
         this.placementGroup = placementGroup;
-        this.hostableInterfaces = hostableInterfaces;
+        this.hostableInterfacesHash = hostableInterfacesHash;
 
         this.nodeViews = nodeViews;
+
+        this.baseSequenceNumber = baseSequenceNumber;
+        this.removedNodes = removedNodes;
+        this.viewDigest = viewDigest;
+        this.coalescedHeartBeats = coalescedHeartBeats;
+    }
+
+    /**
+     * Folds two heartbeats from the same sender into one that has the same effect as applying both in order. The
+     * newer heartbeat wins outright when it is a full snapshot, or when it is a delta that doesn't build on the older
+     * one (the receiver then notices the gap exactly as if the older one had been lost).
+     */
+    public static RedisClusterHeartBeat coalesce(final RedisClusterHeartBeat older, final RedisClusterHeartBeat newer)
+    {
+        if ( newer.sequenceNumber <= older.sequenceNumber )
+        {
+            return older;
+        }
+        final int coalescedHeartBeats = older.coalescedHeartBeats + 1 + newer.coalescedHeartBeats;
+        final boolean chained = ! newer.isFullSnapshot() && newer.baseSequenceNumber == older.sequenceNumber;
+
+        final Map<NodeAddress, RedisClusterNodeView> nodeViews;
+        final Set<NodeAddress> removedNodes;
+        if ( chained )
+        {
+            // Deltas apply removals first, then views, so the union of removals is safe even for re-added nodes.
+            nodeViews = new HashMap<>(older.nodeViews);
+            nodeViews.keySet().removeAll(newer.removedNodes);
+            nodeViews.putAll(newer.nodeViews);
+            if ( older.isFullSnapshot() )
+            {
+                removedNodes = Collections.emptySet();
+            }
+            else
+            {
+                removedNodes = new HashSet<>(older.removedNodes);
+                removedNodes.addAll(newer.removedNodes);
+            }
+        }
+        else
+        {
+            nodeViews = newer.nodeViews;
+            removedNodes = newer.removedNodes;
+        }
+
+        return new RedisClusterHeartBeat(newer.nodeAddress, newer.nodeName, newer.nodeType, newer.nodeState,
+                newer.sequenceNumber, newer.placementGroup, newer.hostableInterfacesHash, nodeViews,
+                chained ? older.baseSequenceNumber : newer.baseSequenceNumber, removedNodes, newer.viewDigest,
+                coalescedHeartBeats);
     }
 
     public NodeAddress getNodeAddress()
@@ -112,9 +212,9 @@ public class RedisClusterHeartBeat implements Serializable
         return placementGroup;
     }
 
-    public Set<String> getHostableInterfaces()
+    public long getHostableInterfacesHash()
     {
-        return hostableInterfaces;
+        return hostableInterfacesHash;
     }
 
     public Map<NodeAddress, RedisClusterNodeView> getNodeViews()
@@ -122,11 +222,41 @@ public class RedisClusterHeartBeat implements Serializable
         return nodeViews;
     }
 
+    public int getBaseSequenceNumber()
+    {
+        return baseSequenceNumber;
+    }
+
+    public boolean isFullSnapshot()
+    {
+        return baseSequenceNumber < 0;
+    }
+
+    public Set<NodeAddress> getRemovedNodes()
+    {
+        return removedNodes;
+    }
+
+    public long getViewDigest()
+    {
+        return viewDigest;
+    }
+
+    public int getCoalescedHeartBeats()
+    {
+        return coalescedHeartBeats;
+    }
+
     @Override
     public String toString()
     {
         StringBuilder buf = new StringBuilder("RedisClusterHeartBeat ");
-        buf.append(" ").append(nodeAddress).append(" ").append(nodeName).append(" ").append(nodeState).append(" ").append(nodeType).append('\n');
+        buf.append(" ").append(nodeAddress).append(" ").append(nodeName).append(" ").append(nodeState).append(" ").append(nodeType);
+        if ( ! isFullSnapshot() )
+        {
+            buf.append(" delta from ").append(baseSequenceNumber).append(" removed ").append(removedNodes);
+        }
+        buf.append('\n');
         nodeViews.forEach((addr, view) -> buf.append('\t').append(addr).append(' ').append(view).append('\n'));
         return buf.toString();
     }
@@ -0,0 +1,256 @@
+/*
+ Copyright (C) 2018 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package cloud.orbit.actors.cluster.heartbeat;
+
+import cloud.orbit.actors.NodeState;
+import cloud.orbit.actors.NodeType;
+import cloud.orbit.actors.cluster.NodeAddress;
+import cloud.orbit.actors.cluster.NodeAddressImpl;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * The <code>RedisClusterHeartBeatCodec</code> is the wire format of <code>RedisClusterHeartBeat</code>s on the
+ * messaging connections. Addresses are raw UUIDs, enums are ordinals and all counters are (zig-zag) varints:
+ *
+ * <pre>
+ *     [version][sender UUID][node name][node type][node state][sequence number][placement group]
+ *     [hostable interfaces hash (8 bytes)][base sequence number][view digest (8 bytes)]
+ *     [removed count]{[UUID]}*
+ *     [view count]{[UUID][node type][node state][last received timestamp][last received sequence number]
+ *                  [missed sequence numbers][longest missed streak]}*
+ * </pre>
+ *
+ * Strings are a varint of (UTF-8 length + 1) followed by the bytes, with 0 meaning null; enums are (ordinal + 1), with
+ * 0 meaning null.
+ */
+public class RedisClusterHeartBeatCodec
+{
+    private static final byte VERSION = 1;
+
+    private static final int UUID_SIZE = 16;
+    private static final int LONG_SIZE = Long.SIZE / 8;
+    private static final int MAX_VARINT_SIZE = 5;
+    private static final int MAX_VARLONG_SIZE = 10;
+
+    private static final NodeType[] NODE_TYPES = NodeType.values();
+    private static final NodeState[] NODE_STATES = NodeState.values();
+
+    public static void encode(final RedisClusterHeartBeat heartBeat, final ByteBuf target)
+    {
+        target.writeByte(VERSION);
+        writeAddress(target, heartBeat.getNodeAddress());
+        writeString(target, heartBeat.getNodeName());
+        writeEnum(target, heartBeat.getNodeType());
+        writeEnum(target, heartBeat.getNodeState());
+        writeVarLong(target, zigZag(heartBeat.getSequenceNumber()));
+        writeString(target, heartBeat.getPlacementGroup());
+        target.writeLong(heartBeat.getHostableInterfacesHash());
+        writeVarLong(target, zigZag(heartBeat.getBaseSequenceNumber()));
+        target.writeLong(heartBeat.getViewDigest());
+
+        writeVarLong(target, heartBeat.getRemovedNodes().size());
+        for (final NodeAddress removedNode : heartBeat.getRemovedNodes())
+        {
+            writeAddress(target, removedNode);
+        }
+
+        writeVarLong(target, heartBeat.getNodeViews().size());
+        for (final RedisClusterNodeView view : heartBeat.getNodeViews().values())
+        {
+            writeAddress(target, view.getNodeAddress());
+            writeEnum(target, view.getNodeType());
+            writeEnum(target, view.getNodeState());
+            writeVarLong(target, zigZag(view.getLastReceivedTimestamp()));
+            writeVarLong(target, zigZag(view.getLastReceivedSequenceNumber()));
+            writeVarLong(target, zigZag(view.getMissedSequenceNumbersCount()));
+            writeVarLong(target, zigZag(view.getLongestMissedSequenceNumberStreak()));
+        }
+    }
+
+    public static RedisClusterHeartBeat decode(final ByteBuffer source)
+    {
+        final byte version = source.get();
+        if (version != VERSION)
+        {
+            throw new IllegalStateException("Unsupported heartbeat encoding version " + version);
+        }
+
+        final NodeAddress nodeAddress = readAddress(source);
+        final String nodeName = readString(source);
+        final NodeType nodeType = readEnum(source, NODE_TYPES);
+        final NodeState nodeState = readEnum(source, NODE_STATES);
+        final int sequenceNumber = (int) unZigZag(readVarLong(source));
+        final String placementGroup = readString(source);
+        final long hostableInterfacesHash = source.getLong();
+        final int baseSequenceNumber = (int) unZigZag(readVarLong(source));
+        final long viewDigest = source.getLong();
+
+        final int removedCount = (int) readVarLong(source);
+        final Set<NodeAddress> removedNodes = new HashSet<>(removedCount * 2);
+        for (int i = 0; i < removedCount; ++i)
+        {
+            removedNodes.add(readAddress(source));
+        }
+
+        final int viewCount = (int) readVarLong(source);
+        final Map<NodeAddress, RedisClusterNodeView> nodeViews = new HashMap<>(viewCount * 2);
+        for (int i = 0; i < viewCount; ++i)
+        {
+            final RedisClusterNodeView view = new RedisClusterNodeView(
+                    readAddress(source),
+                    readEnum(source, NODE_TYPES),
+                    readEnum(source, NODE_STATES),
+                    unZigZag(readVarLong(source)),
+                    (int) unZigZag(readVarLong(source)),
+                    (int) unZigZag(readVarLong(source)),
+                    (int) unZigZag(readVarLong(source))
+            );
+            nodeViews.put(view.getNodeAddress(), view);
+        }
+
+        return new RedisClusterHeartBeat(nodeAddress, nodeName, nodeType, nodeState, sequenceNumber, placementGroup,
+                hostableInterfacesHash, nodeViews, baseSequenceNumber, removedNodes, viewDigest);
+    }
+
+    /**
+     * Returns an upper bound of the encoded size of a heartbeat.
+     */
+    public static int estimateSize(final RedisClusterHeartBeat heartBeat)
+    {
+        return 1 + UUID_SIZE + estimateStringSize(heartBeat.getNodeName()) + 2 + MAX_VARINT_SIZE
+                + estimateStringSize(heartBeat.getPlacementGroup()) + LONG_SIZE + MAX_VARINT_SIZE + LONG_SIZE
+                + MAX_VARINT_SIZE + UUID_SIZE * heartBeat.getRemovedNodes().size()
+                + MAX_VARINT_SIZE + (UUID_SIZE + 2 + MAX_VARLONG_SIZE + 3 * MAX_VARINT_SIZE) * heartBeat.getNodeViews().size();
+    }
+
+    private static int estimateStringSize(final String value)
+    {
+        return MAX_VARINT_SIZE + (value == null ? 0 : ByteBufUtil.utf8MaxBytes(value));
+    }
+
+    private static void writeAddress(final ByteBuf target, final NodeAddress address)
+    {
+        final UUID uuid = address.asUUID();
+        target.writeLong(uuid.getMostSignificantBits());
+        target.writeLong(uuid.getLeastSignificantBits());
+    }
+
+    private static NodeAddress readAddress(final ByteBuffer source)
+    {
+        return new NodeAddressImpl(new UUID(source.getLong(), source.getLong()));
+    }
+
+    private static void writeEnum(final ByteBuf target, final Enum<?> value)
+    {
+        target.writeByte(value == null ? 0 : value.ordinal() + 1);
+    }
+
+    private static <E extends Enum<E>> E readEnum(final ByteBuffer source, final E[] values)
+    {
+        final int ordinal = source.get() - 1;
+        return ordinal < 0 ? null : values[ordinal];
+    }
+
+    private static void writeString(final ByteBuf target, final String value)
+    {
+        if (value == null)
+        {
+            writeVarLong(target, 0);
+            return;
+        }
+        writeVarLong(target, ByteBufUtil.utf8Bytes(value) + 1);
+        ByteBufUtil.writeUtf8(target, value);
+    }
+
+    private static String readString(final ByteBuffer source)
+    {
+        final int length = (int) readVarLong(source) - 1;
+        if (length < 0)
+        {
+            return null;
+        }
+
+        final String value;
+        if (source.hasArray())
+        {
+            value = new String(source.array(), source.arrayOffset() + source.position(), length, StandardCharsets.UTF_8);
+            source.position(source.position() + length);
+        }
+        else
+        {
+            final byte[] bytes = new byte[length];
+            source.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return value;
+    }
+
+    private static long zigZag(final long value)
+    {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(final long value)
+    {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarLong(final ByteBuf target, long value)
+    {
+        while ((value & ~0x7FL) != 0)
+        {
+            target.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        target.writeByte((int) value);
+    }
+
+    private static long readVarLong(final ByteBuffer source)
+    {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do
+        {
+            b = source.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
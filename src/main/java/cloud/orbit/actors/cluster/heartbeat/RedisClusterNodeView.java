@@ -106,6 +106,33 @@ public class RedisClusterNodeView implements Serializable
         return longestMissedSequenceNumberStreak;
     }
 
+    /**
+     * Returns a 64-bit hash of the membership-relevant part of this view (address, type and state). Digests of a set
+     * of views are summed, so the digest of a heartbeat doesn't depend on iteration order and can be maintained
+     * incrementally.
+     */
+    public long digest()
+    {
+        long h = nodeAddress.asUUID().getMostSignificantBits() * 31 + nodeAddress.asUUID().getLeastSignificantBits();
+        h = h * 31 + (nodeType == null ? -1 : nodeType.ordinal());
+        h = h * 31 + (nodeState == null ? -1 : nodeState.ordinal());
+
+        // SplitMix64 finalizer, so that similar inputs don't produce similar (and cancelling) digests.
+        h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+        h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+        return h ^ (h >>> 31);
+    }
+
+    public static long digest(final Iterable<RedisClusterNodeView> views)
+    {
+        long digest = 0;
+        for (final RedisClusterNodeView view : views)
+        {
+            digest += view.digest();
+        }
+        return digest;
+    }
+
     @Override
     public String toString()
     {
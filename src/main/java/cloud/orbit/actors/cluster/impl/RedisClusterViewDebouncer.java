@@ -0,0 +1,170 @@
+/*
+ Copyright (C) 2018 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package cloud.orbit.actors.cluster.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The <code>RedisClusterViewDebouncer</code> collapses bursts of cluster view changes into one delivery. A change is
+ * delivered once no other change has followed it for <code>debounceMillis</code>, but never later than
+ * <code>maxDelayMillis</code> after the first change of the burst. Urgent changes, such as dead nodes, are delivered
+ * right away along with whatever was pending.
+ *
+ * With a <code>debounceMillis</code> of zero, every change is delivered on the calling thread, as it happens.
+ */
+public class RedisClusterViewDebouncer
+{
+    private static Logger logger = LoggerFactory.getLogger(RedisClusterViewDebouncer.class);
+
+    private final long debounceNanos;
+    private final long maxDelayNanos;
+    private final Runnable delivery;
+    private final ScheduledExecutorService executor;
+
+    // guarded by this
+    private ScheduledFuture<?> scheduledDelivery;
+    private long scheduledGeneration; // bumped whenever the scheduled delivery is superseded
+    private long firstChangeNanos;
+
+    public RedisClusterViewDebouncer(final String clusterName, final long debounceMillis, final long maxDelayMillis, final Runnable delivery)
+    {
+        this.debounceNanos = TimeUnit.MILLISECONDS.toNanos(debounceMillis);
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(debounceMillis, maxDelayMillis));
+        this.delivery = delivery;
+        this.executor = debounceMillis <= 0 ? null : Executors.newSingleThreadScheduledExecutor(runnable ->
+        {
+            final Thread thread = new Thread(runnable, "orbit-redis-view-" + clusterName);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Reports a view change, delivering it once the burst it belongs to is over.
+     */
+    public void viewChanged()
+    {
+        if ( executor == null )
+        {
+            delivery.run();
+            return;
+        }
+
+        synchronized (this)
+        {
+            final long now = System.nanoTime();
+            if ( scheduledDelivery == null )
+            {
+                firstChangeNanos = now;
+            }
+            else
+            {
+                scheduledDelivery.cancel(false);
+            }
+
+            final long deliverAt = Math.min(now + debounceNanos, firstChangeNanos + maxDelayNanos);
+            final long generation = ++scheduledGeneration;
+            try
+            {
+                scheduledDelivery = executor.schedule(() -> deliverScheduled(generation), deliverAt - now, TimeUnit.NANOSECONDS);
+            }
+            catch (RejectedExecutionException e)
+            {
+                // Only happens after shutdown, when views no longer matter.
+                scheduledDelivery = null;
+            }
+        }
+    }
+
+    /**
+     * Delivers the current view now, without waiting for the burst to end.
+     */
+    public void deliverNow()
+    {
+        synchronized (this)
+        {
+            if ( scheduledDelivery != null )
+            {
+                scheduledDelivery.cancel(false);
+                scheduledDelivery = null;
+            }
+            ++scheduledGeneration;
+        }
+        deliver();
+    }
+
+    /**
+     * Returns true while a delivery is scheduled for the current burst.
+     */
+    synchronized boolean isDeliveryScheduled()
+    {
+        return scheduledDelivery != null;
+    }
+
+    public void shutdown()
+    {
+        if ( executor != null )
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    private void deliverScheduled(final long generation)
+    {
+        synchronized (this)
+        {
+            // A later change or an urgent delivery got here first.
+            if ( generation != scheduledGeneration )
+            {
+                return;
+            }
+            scheduledDelivery = null;
+        }
+        deliver();
+    }
+
+    private void deliver()
+    {
+        try
+        {
+            delivery.run();
+        }
+        catch (Exception e)
+        {
+            logger.error("Error delivering cluster view", e);
+        }
+    }
+}
@@ -37,8 +37,14 @@ import cloud.orbit.actors.cluster.RedisClusterConfig;
 import cloud.orbit.actors.cluster.impl.lettuce.FstStringObjectCodec;
 import cloud.orbit.actors.cluster.impl.lettuce.LettuceClient;
 import cloud.orbit.actors.cluster.impl.lettuce.LettucePubSubClient;
+import cloud.orbit.actors.cluster.impl.lettuce.RedisMessagingCodec;
+import cloud.orbit.actors.cluster.pipeline.RedisPipelineCodec;
+import cloud.orbit.actors.cluster.pipeline.RedisPipelineStep;
 import cloud.orbit.concurrent.Task;
 import cloud.orbit.exception.UncheckedException;
+import io.lettuce.core.codec.RedisCodec;
+import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.pubsub.RedisPubSubAdapter;
 import io.lettuce.core.pubsub.RedisPubSubListener;
 
 import java.net.URI;
@@ -47,8 +53,15 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 import java.util.stream.Stream;
 
 import static java.util.stream.Collectors.toList;
@@ -63,13 +76,31 @@ public class RedisConnectionManager
     private final List<LettuceClient<String, Object>> nodeDirectoryClients = new ArrayList<>();
     private final List<LettuceClient<String, Object>> actorDirectoryClients = new ArrayList<>();
     private final List<LettucePubSubClient> messagingClients = new ArrayList<>();
+    private final List<LettucePubSubClient> controlClients = new ArrayList<>(); // empty unless controlPlaneConnections
+    private final List<LettucePubSubClient> nodeDirectoryPubSubClients = new ArrayList<>(); // created on first use
+    private final ConcurrentMap<String, RedisPubSubListener<String, Object>> nodeChannelSubscriptions = new ConcurrentHashMap<>();
+    private volatile List<String> messagingTopology = Collections.emptyList();
+    // runs publish retries off Lettuce's event loop, and off the common pool, since a retry may block on an outbound permit
+    private final ExecutorService retryExecutor = Executors.newCachedThreadPool(runnable ->
+    {
+        final Thread thread = new Thread(runnable, "orbit-redis-publish-retry");
+        thread.setDaemon(true);
+        return thread;
+    });
     private static final Logger logger = LoggerFactory.getLogger(RedisConnectionManager.class);
 
     private final RedisClusterConfig redisClusterConfig;
+    private final UUID localAddress; // multicast payloads for other nodes are skipped when decoding; null decodes all
 
     public RedisConnectionManager(final RedisClusterConfig redisClusterConfig)
+    {
+        this(redisClusterConfig, null);
+    }
+
+    public RedisConnectionManager(final RedisClusterConfig redisClusterConfig, final UUID localAddress)
     {
         this.redisClusterConfig = redisClusterConfig;
+        this.localAddress = localAddress;
         final List<String> nodeDirectoryMasters = redisClusterConfig.getNodeDirectoryUris();
         for (final String uri : nodeDirectoryMasters)
         {
@@ -95,6 +126,17 @@ public class RedisConnectionManager
 
         // Second remove clients that are no longer in the topology
         removeMissingMessagingClients(messagingUris);
+
+        // Finally, when partitioned, move every node channel to its (possibly new) owner and fallback
+        this.messagingTopology = new ArrayList<>(messagingUris);
+        if (redisClusterConfig.getPartitionedMessaging())
+        {
+            nodeChannelSubscriptions.forEach((channelId, listener) ->
+            {
+                subscribeToNodeChannel(channelId, listener);
+                unsubscribeFromFormerOwners(channelId);
+            });
+        }
     }
 
     private void addMissingMessagingClients(List<String> messagingUris) {
@@ -107,11 +149,20 @@ public class RedisConnectionManager
         missing.forEach(uri -> {
             logger.info("Connecting to Redis messaging node at '{}'...", uri);
             messagingClients.add(createLettucePubSubClient(uri, redisClusterConfig.getRedisPipelineFlushIntervalMillis(), redisClusterConfig.getRedisPipelineFlushCommandCount()));
+            if (redisClusterConfig.getControlPlaneConnections())
+            {
+                controlClients.add(createLettuceControlClient(uri));
+            }
         });
     }
 
     private void removeMissingMessagingClients(List<String> messagingUris) {
-        Iterator<LettucePubSubClient> itr = messagingClients.iterator();
+        removeMissingClients(messagingClients, messagingUris);
+        removeMissingClients(controlClients, messagingUris);
+    }
+
+    private static void removeMissingClients(final List<LettucePubSubClient> clients, final List<String> messagingUris) {
+        Iterator<LettucePubSubClient> itr = clients.iterator();
         while (itr.hasNext()) {
             LettucePubSubClient client = itr.next();
             if (!messagingUris.contains(client.getRedisUrl())) {
@@ -135,12 +186,36 @@ public class RedisConnectionManager
         return messagingClients.stream().filter(LettucePubSubClient::isConnected).collect(toList());
     }
 
+    /**
+     * Returns the connected clients that carry cluster control traffic (heartbeats): the dedicated control-plane
+     * clients when they are enabled, otherwise the shared messaging clients.
+     */
+    public List<LettucePubSubClient> getActiveControlClients() {
+        if (!redisClusterConfig.getControlPlaneConnections())
+        {
+            return getActiveMessagingClients();
+        }
+        return controlClients.stream().filter(LettucePubSubClient::isConnected).collect(toList());
+    }
+
     public LettuceClient<String, Object> getShardedNodeDirectoryClient(final String shardId)
     {
         final int jumpConsistentHash = JumpConsistentHash.jumpConsistentHash(shardId, nodeDirectoryClients.size());
         return nodeDirectoryClients.get(jumpConsistentHash);
     }
 
+    /**
+     * Opens a new connection to the node directory server owning <code>shardId</code>, for blocking commands that
+     * must not hold up the shared connection. The caller shuts it down.
+     */
+    public LettuceClient<String, Object> createDedicatedNodeDirectoryClient(final String shardId, final long timeoutMillis)
+    {
+        final List<String> nodeDirectoryUris = redisClusterConfig.getNodeDirectoryUris();
+        final String uri = nodeDirectoryUris.get(JumpConsistentHash.jumpConsistentHash(shardId, nodeDirectoryUris.size()));
+        return new LettuceClient<>(this.resolveUri(uri), new FstStringObjectCodec(), timeoutMillis,
+                redisClusterConfig.getUseClusterForDirectoryNodes(), redisClusterConfig.getUseElasticacheForDirectoryNodes());
+    }
+
     public LettuceClient<String, Object> getShardedActorDirectoryClient(final String shardId)
     {
         final int jumpConsistentHash = JumpConsistentHash.jumpConsistentHash(shardId, actorDirectoryClients.size());
@@ -149,11 +224,20 @@ public class RedisConnectionManager
 
     public void subscribeToChannel(final String channelId, final RedisPubSubListener<String, Object> statusListener)
     {
-        // Note: The same instances of LettucePubSubClient are being used for both node <-> node messaging and for
-        // node <-> cluster messaging, which is why messages of both types are delivered to both listeners configured
-        // in RedisClusterPeer, which is why they have `instanceof` checks to disambiguate messages.
-        // This also means that cluster heartbeats are sensitive to pipelining/batching.
-        final List<LettucePubSubClient> localMessagingClients = getActiveMessagingClients();
+        subscribeToChannel(getActiveMessagingClients(), channelId, statusListener);
+    }
+
+    /**
+     * Subscribes to a cluster control channel. With control-plane connections, the listener only ever sees control
+     * traffic, and heartbeats never wait behind pipelined node messages.
+     */
+    public void subscribeToControlChannel(final String channelId, final RedisPubSubListener<String, Object> statusListener)
+    {
+        subscribeToChannel(getActiveControlClients(), channelId, statusListener);
+    }
+
+    private void subscribeToChannel(final List<LettucePubSubClient> localMessagingClients, final String channelId, final RedisPubSubListener<String, Object> statusListener)
+    {
         logger.info("Subscribing {} Lettuce clients to channel {}", localMessagingClients.size(), channelId);
 
         final Stream<CompletableFuture<Void>> subscribeTasks = localMessagingClients.stream()
@@ -164,6 +248,148 @@ public class RedisConnectionManager
         Task.allOf(subscribeTasks).join();
     }
 
+    /**
+     * Subscribes to the keyspace notifications of the keys starting with <code>keyPrefix</code> on every node directory
+     * server, in the database its connections use (see <code>selectUriDatabase</code>). <code>keyEventListener</code> is given each key and event.
+     */
+    public void subscribeToNodeDirectoryKeyspace(final String keyPrefix, final BiConsumer<String, String> keyEventListener)
+    {
+        final List<LettucePubSubClient> clients;
+        synchronized (nodeDirectoryPubSubClients)
+        {
+            if (nodeDirectoryPubSubClients.isEmpty())
+            {
+                for (final String uri : redisClusterConfig.getNodeDirectoryUris())
+                {
+                    logger.info("Connecting to Redis Node Directory node at '{}' for notifications...", uri);
+                    nodeDirectoryPubSubClients.add(createLettuceNotificationClient(uri));
+                }
+            }
+            clients = new ArrayList<>(nodeDirectoryPubSubClients);
+        }
+        clients.removeIf(client -> !client.isConnected());
+
+        logger.info("Subscribing {} Lettuce clients to keyspace notifications for {}*", clients.size(), keyPrefix);
+        final Stream<CompletableFuture<Void>> subscribeTasks = clients.stream().map(client ->
+        {
+            final String channelPrefix = keyspaceChannelPrefix(client.getRedisUrl());
+            return client.subscribeToPrefix(channelPrefix + keyPrefix, new RedisPubSubAdapter<String, Object>()
+            {
+                @Override
+                public void message(final String channel, final Object event)
+                {
+                    keyEventListener.accept(channel.substring(channelPrefix.length()), String.valueOf(event));
+                }
+            });
+        });
+        Task.allOf(subscribeTasks).join();
+    }
+
+    /**
+     * Returns the prefix of the keyspace notification channels for the database selected by a Redis URI.
+     */
+    static String keyspaceChannelPrefix(final String uri)
+    {
+        return "__keyspace@" + database(uri) + "__:";
+    }
+
+    /**
+     * Returns the database selected by the path of a Redis URI, e.g. 2 for <code>redis://host:6379/2</code>.
+     */
+    static int database(final String uri)
+    {
+        final String path = URI.create(uri).getPath();
+        if (path == null || path.isEmpty() || path.equals("/"))
+        {
+            return 0;
+        }
+        try
+        {
+            return Integer.parseInt(path.substring(1));
+        }
+        catch (NumberFormatException e)
+        {
+            throw new UncheckedException("Invalid Redis database in URI: " + uri);
+        }
+    }
+
+    /**
+     * Subscribes to a channel addressed to a single node. When messaging is partitioned, the channel is only
+     * subscribed on the messaging server that owns it and on that server's fallback; otherwise this is the same as
+     * <code>subscribeToChannel</code>.
+     */
+    public void subscribeToNodeChannel(final String channelId, final RedisPubSubListener<String, Object> statusListener)
+    {
+        if (!redisClusterConfig.getPartitionedMessaging())
+        {
+            subscribeToChannel(channelId, statusListener);
+            return;
+        }
+
+        nodeChannelSubscriptions.put(channelId, statusListener);
+
+        final List<LettucePubSubClient> partitionClients = getPartitionMessagingClients(channelId);
+        partitionClients.removeIf(client -> !client.isConnected());
+        logger.info("Subscribing {} partition Lettuce clients to channel {}", partitionClients.size(), channelId);
+
+        final Stream<CompletableFuture<Void>> subscribeTasks = partitionClients.stream()
+                .map(messagingClient -> subscribeToChannel(messagingClient, channelId, statusListener));
+
+        partitionClients.forEach(LettucePubSubClient::flush);
+        Task.allOf(subscribeTasks).join();
+    }
+
+    /**
+     * Drops a node channel's subscriptions on the servers that no longer own it or back it up, which would otherwise
+     * deliver every message a second time.
+     */
+    private void unsubscribeFromFormerOwners(final String channelId)
+    {
+        final List<LettucePubSubClient> partitionClients = getPartitionMessagingClients(channelId);
+        messagingClients.stream()
+                .filter(client -> !partitionClients.contains(client) && client.isSubscribed(channelId))
+                .forEach(client ->
+                {
+                    logger.info("Unsubscribing from channel {} on '{}', which no longer owns it", channelId, client.getRedisUrl());
+                    client.unsubscribe(channelId).exceptionally(e ->
+                    {
+                        logger.error("Error unsubscribing from channel", e);
+                        return null;
+                    });
+                    client.flush();
+                });
+    }
+
+    /**
+     * Returns the messaging clients responsible for a node channel when messaging is partitioned: the owning server
+     * (chosen by consistent hash over the configured messaging topology) followed by its fallback.
+     */
+    private List<LettucePubSubClient> getPartitionMessagingClients(final String channelId)
+    {
+        final List<String> topology = this.messagingTopology;
+        final List<LettucePubSubClient> partitionClients = new ArrayList<>(2);
+        if (topology.isEmpty())
+        {
+            return partitionClients;
+        }
+
+        final int owner = JumpConsistentHash.jumpConsistentHash(channelId, topology.size());
+        addMessagingClient(partitionClients, topology.get(owner));
+        if (topology.size() > 1)
+        {
+            addMessagingClient(partitionClients, topology.get((owner + 1) % topology.size()));
+        }
+        return partitionClients;
+    }
+
+    private void addMessagingClient(final List<LettucePubSubClient> clients, final String uri)
+    {
+        messagingClients.stream()
+                .filter(c -> c.getRedisUrl().equals(uri))
+                .findAny()
+                .ifPresent(clients::add);
+    }
+
     private CompletableFuture<Void> subscribeToChannel(
             final LettucePubSubClient messagingClient,
             final String channelId,
@@ -179,29 +405,62 @@ public class RedisConnectionManager
     }
 
 
-    public void sendMessageToChannel(final String channelId, final Object msg)
+    /**
+     * Publishes to a channel, returning the number of subscribers that received the message. The returned future
+     * fails if the message could not be handed to any messaging server, e.g. because its outbound queue is full.
+     */
+    public CompletableFuture<Long> sendMessageToChannel(final String channelId, final Object msg)
     {
         final List<LettucePubSubClient> localMessagingClients = getActiveMessagingClients();
-        sendMessageToChannel(channelId, msg, localMessagingClients, 1);
+        return sendMessageToChannel(channelId, msg, localMessagingClients, false, 1);
+    }
+
+    /**
+     * Publishes to a cluster control channel, over the control-plane connections when they are enabled.
+     */
+    public CompletableFuture<Long> sendMessageToControlChannel(final String channelId, final Object msg)
+    {
+        return sendMessageToChannel(channelId, msg, getActiveControlClients(), false, 1);
+    }
+
+    /**
+     * Publishes to a channel addressed to a single node. When messaging is partitioned, the message goes to the
+     * channel's owning messaging server, or to its fallback if the owner is unavailable.
+     */
+    public CompletableFuture<Long> sendMessageToNodeChannel(final String channelId, final Object msg)
+    {
+        if (!redisClusterConfig.getPartitionedMessaging())
+        {
+            return sendMessageToChannel(channelId, msg);
+        }
+
+        final List<LettucePubSubClient> partitionClients = getPartitionMessagingClients(channelId);
+        partitionClients.removeIf(client -> !client.isConnected());
+        return sendMessageToChannel(channelId, msg, partitionClients, true, 1);
     }
 
-    private void sendMessageToChannel(final String channelId, final Object msg, final List<LettucePubSubClient> localMessagingClients, final int attempt)
+    private CompletableFuture<Long> sendMessageToChannel(final String channelId, final Object msg, final List<LettucePubSubClient> localMessagingClients, final boolean inOrder, final int attempt)
     {
         final int activeClientCount = localMessagingClients.size();
         if (activeClientCount == 0)
         {
             logger.error("Failed to send message to channel '{}', no redis messaging instances were available after {} attempts.", channelId, attempt);
-            return;
+            final CompletableFuture<Long> result = new CompletableFuture<>();
+            result.completeExceptionally(new UncheckedException("No redis messaging instances available for channel " + channelId));
+            return result;
         }
 
-        final int randomIndex = ThreadLocalRandom.current().nextInt(activeClientCount);
-        final LettucePubSubClient client = localMessagingClients.remove(randomIndex);
+        final int index = inOrder ? 0 : ThreadLocalRandom.current().nextInt(activeClientCount);
+        final LettucePubSubClient client = localMessagingClients.remove(index);
 
-        client.publish(channelId, msg)
-                .whenComplete((numClientsReceived, exception) -> {
+        return client.publish(channelId, msg)
+                .handle((numClientsReceived, exception) -> {
                     if (exception != null)
                     {
                         logger.error("Failed to send message to channel '{}'", channelId, exception);
+                        final CompletableFuture<Long> result = new CompletableFuture<>();
+                        result.completeExceptionally(exception);
+                        return result;
                     }
                     else if (numClientsReceived == 0)
                     {
@@ -212,27 +471,71 @@ public class RedisConnectionManager
                         else
                         {
                             logger.warn("Failed to send message to channel '{}' on attempt {}. Retrying...", channelId, attempt);
-                            sendMessageToChannel(channelId, msg, localMessagingClients, attempt + 1);
+                            // We are on Lettuce's event loop, which must never wait for an outbound permit.
+                            return CompletableFuture.supplyAsync(() -> sendMessageToChannel(channelId, msg, localMessagingClients, inOrder, attempt + 1), retryExecutor)
+                                    .thenCompose(f -> f);
                         }
                     }
-                });
+                    return CompletableFuture.completedFuture(numClientsReceived);
+                })
+                .thenCompose(f -> f);
+    }
+
+    /**
+     * Waits (up to the timeout) for every publish issued so far to be processed by its messaging server.
+     */
+    public void drainMessaging(final long timeoutMillis)
+    {
+        final Stream<CompletableFuture<Void>> drainTasks = getActiveMessagingClients().stream()
+                .map(LettucePubSubClient::drain);
+        try
+        {
+            Task.allOf(drainTasks).get(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        catch (Exception e)
+        {
+            logger.warn("Failed to drain outbound messages before shutdown", e);
+        }
     }
 
     public void shutdownConnections()
     {
+        retryExecutor.shutdown();
         nodeDirectoryClients.forEach(LettuceClient::shutdown);
         actorDirectoryClients.forEach(LettuceClient::shutdown);
         messagingClients.forEach(LettucePubSubClient::shutdown);
+        controlClients.forEach(LettucePubSubClient::shutdown);
+        synchronized (nodeDirectoryPubSubClients)
+        {
+            nodeDirectoryPubSubClients.forEach(LettucePubSubClient::shutdown);
+        }
     }
 
     private LettucePubSubClient createLettucePubSubClient(final String uri, final long pipelineFlushIntervalMillis, final int pipelineFlushCount)
     {
-        return new LettucePubSubClient(this.resolveUri(uri), pipelineFlushIntervalMillis, pipelineFlushCount);
+        return new LettucePubSubClient(this.resolveUri(uri), createPipelineCodec(new RedisMessagingCodec(localAddress)), pipelineFlushIntervalMillis, pipelineFlushCount,
+                redisClusterConfig.getOutboundQueueSize(), redisClusterConfig.getOutboundQueueOverflowPolicy(), redisClusterConfig.getGeneralTimeout());
+    }
+
+    private LettucePubSubClient createLettuceControlClient(final String uri)
+    {
+        // Control traffic is small and latency sensitive: no pipelining, no outbound bound.
+        logger.info("Connecting to Redis messaging node at '{}' for control traffic...", uri);
+        return new LettucePubSubClient(this.resolveUri(uri), createPipelineCodec(new RedisMessagingCodec(localAddress)), 0, 0,
+                0, redisClusterConfig.getOutboundQueueOverflowPolicy(), redisClusterConfig.getGeneralTimeout());
+    }
+
+    @SuppressWarnings("unchecked")
+    private LettucePubSubClient createLettuceNotificationClient(final String uri)
+    {
+        final RedisCodec<String, Object> codec = (RedisCodec) StringCodec.UTF8;
+        return new LettucePubSubClient(this.resolveUri(uri), codec, 0, 0,
+                0, redisClusterConfig.getOutboundQueueOverflowPolicy(), redisClusterConfig.getGeneralTimeout());
     }
 
     private LettuceClient<String, Object> createLettuceActorClient(final String uri, final RedisClusterConfig config)
     {
-        return new LettuceClient<>(this.resolveUri(uri), new FstStringObjectCodec(), config.getConnectionTimeout(), config.getUseClusterForDirectoryNodes(), config.getUseElasticacheForDirectoryNodes());
+        return new LettuceClient<>(this.resolveUri(uri), createPipelineCodec(new FstStringObjectCodec()), config.getConnectionTimeout(), config.getUseClusterForDirectoryNodes(), config.getUseElasticacheForDirectoryNodes());
     }
 
     private LettuceClient<String, Object> createLettuceNodeClient(final String uri, final RedisClusterConfig config)
@@ -240,6 +543,16 @@ public class RedisConnectionManager
         return new LettuceClient<>(this.resolveUri(uri), new FstStringObjectCodec(), config.getConnectionTimeout(), config.getUseClusterForDirectoryNodes(), config.getUseElasticacheForDirectoryNodes());
     }
 
+    private RedisCodec<String, Object> createPipelineCodec(final RedisCodec<String, Object> codec)
+    {
+        final List<RedisPipelineStep> pipelineSteps = redisClusterConfig.getPipelineSteps();
+        if (pipelineSteps.isEmpty())
+        {
+            return codec;
+        }
+        return new RedisPipelineCodec<>(codec, pipelineSteps, redisClusterConfig.getPipelineMinimumSizeBytes());
+    }
+
     private  String resolveUri(final String uri)
     {
         // Resolve URI
@@ -252,7 +565,9 @@ public class RedisConnectionManager
         if (host == null) host = "localhost";
         Integer port = realUri.getPort();
         if (port == -1) port = 6379;
-        return "redis://" + host + ":" + port;
+        // Historically the database was ignored; only select it when asked to, so existing directories don't move.
+        final int database = redisClusterConfig.getSelectUriDatabase() ? database(uri) : 0;
+        return "redis://" + host + ":" + port + (database != 0 ? "/" + database : "");
     }
 
 }
@@ -0,0 +1,198 @@
+/*
+ Copyright (C) 2018 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package cloud.orbit.actors.cluster.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cloud.orbit.actors.cluster.RedisClusterConfig;
+import cloud.orbit.exception.UncheckedException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * The <code>RedisHostableInterfaceRegistry</code> stores sets of hostable actor interfaces in the node directory,
+ * keyed by a hash of their contents, so that heartbeats only need to carry the hash. Sets fetched from Redis are
+ * cached, so each distinct set is fetched at most once per node.
+ *
+ * Lookups never block the caller: an unknown hash is fetched in the background and handed to the resolution
+ * listener once it arrives.
+ */
+public class RedisHostableInterfaceRegistry
+{
+    private static Logger logger = LoggerFactory.getLogger(RedisHostableInterfaceRegistry.class);
+
+    private final String clusterName;
+    private final RedisConnectionManager redisConnectionManager;
+    private final RedisClusterConfig config;
+    private final ConcurrentMap<Long, Set<String>> knownInterfaceSets = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, Long> failedLookups = new ConcurrentHashMap<>(); // hash -> nanoTime of failure
+    private final Set<Long> pendingLookups = ConcurrentHashMap.newKeySet();
+    private final BiConsumer<Long, Set<String>> resolutionListener;
+
+    private volatile long registeredHash;
+    private volatile long registeredAt = Long.MIN_VALUE;
+
+    public RedisHostableInterfaceRegistry(
+            final String clusterName,
+            final RedisConnectionManager redisConnectionManager,
+            final RedisClusterConfig config,
+            final BiConsumer<Long, Set<String>> resolutionListener)
+    {
+        this.clusterName = clusterName;
+        this.redisConnectionManager = redisConnectionManager;
+        this.config = config;
+        this.resolutionListener = resolutionListener;
+    }
+
+    /**
+     * Returns a content hash of an interface set that doesn't depend on iteration order.
+     */
+    public static long hash(final Set<String> interfaces)
+    {
+        try
+        {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (final String name : new TreeSet<>(interfaces))
+            {
+                digest.update(name.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) '\n');
+            }
+            return ByteBuffer.wrap(digest.digest()).getLong();
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new UncheckedException(e);
+        }
+    }
+
+    /**
+     * Stores the local interface set, waiting until it has been written so that other nodes can resolve our hash as
+     * soon as they hear our first heartbeat.
+     */
+    public void register(final long hash, final Set<String> interfaces)
+    {
+        knownInterfaceSets.put(hash, interfaces);
+        write(hash).join();
+    }
+
+    /**
+     * Rewrites the local interface set once half of its lifetime has elapsed.
+     */
+    public void refresh()
+    {
+        final long now = System.nanoTime();
+        if (registeredAt != Long.MIN_VALUE && now - registeredAt >= TimeUnit.SECONDS.toNanos(config.getNodeLifetimeSeconds()) / 2)
+        {
+            write(registeredHash);
+        }
+    }
+
+    private CompletableFuture<Void> write(final long hash)
+    {
+        final String key = RedisKeyGenerator.hostableInterfacesKey(clusterName, Long.toHexString(hash));
+        registeredHash = hash;
+        registeredAt = System.nanoTime();
+        return redisConnectionManager.getShardedNodeDirectoryClient(key)
+                .set(key, new HashSet<>(knownInterfaceSets.get(hash)), TimeUnit.SECONDS.toMillis(config.getNodeLifetimeSeconds()))
+                .handle((r, e) ->
+                {
+                    if (e != null)
+                    {
+                        logger.error("Failed to register hostable interfaces", e);
+                    }
+                    return null;
+                });
+    }
+
+    /**
+     * Returns the interface set with the given hash if it is known locally. Otherwise returns null and, unless a
+     * lookup for it is already running or recently failed, starts fetching it from Redis.
+     */
+    public Set<String> resolve(final long hash)
+    {
+        final Set<String> known = knownInterfaceSets.get(hash);
+        if (known != null)
+        {
+            return known;
+        }
+
+        // Don't hammer Redis for a set we just failed to fetch.
+        final Long failedAt = failedLookups.get(hash);
+        if (failedAt != null && System.nanoTime() - failedAt < TimeUnit.MILLISECONDS.toNanos(config.getGeneralTimeout()))
+        {
+            return null;
+        }
+
+        if (pendingLookups.add(hash))
+        {
+            fetch(hash);
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void fetch(final long hash)
+    {
+        final String key = RedisKeyGenerator.hostableInterfacesKey(clusterName, Long.toHexString(hash));
+        redisConnectionManager.getShardedNodeDirectoryClient(key)
+                .get(key)
+                .whenComplete((result, e) ->
+                {
+                    pendingLookups.remove(hash);
+                    if (e != null)
+                    {
+                        logger.error("Failed to fetch hostable interfaces for hash {}", Long.toHexString(hash), e);
+                        failedLookups.put(hash, System.nanoTime());
+                    }
+                    else if (result == null)
+                    {
+                        logger.warn("No hostable interfaces registered for hash {}", Long.toHexString(hash));
+                        failedLookups.put(hash, System.nanoTime());
+                    }
+                    else
+                    {
+                        final Set<String> existing = knownInterfaceSets.putIfAbsent(hash, (Set<String>) result);
+                        failedLookups.remove(hash);
+                        resolutionListener.accept(hash, existing != null ? existing : (Set<String>) result);
+                    }
+                });
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ Copyright (C) 2018 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package cloud.orbit.actors.cluster.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A <code>RedisInboundDispatcher</code> hands inbound work off the Lettuce event loop. Work is spread over a fixed
+ * number of lanes by sender, and each lane is drained by at most one executor task at a time, so work from the same
+ * sender runs in arrival order without paying for a task per message. When no executor is given, work runs inline on
+ * the calling (Lettuce) thread, which is only suitable for very cheap listeners.
+ */
+public class RedisInboundDispatcher
+{
+    private static Logger logger = LoggerFactory.getLogger(RedisInboundDispatcher.class);
+
+    private final Lane[] lanes;
+    private final int batchSize;
+    private final Executor executor;
+
+    public RedisInboundDispatcher(final int laneCount, final int batchSize, final Executor executor)
+    {
+        this.batchSize = Math.max(batchSize, 1);
+        this.executor = executor;
+        this.lanes = new Lane[Math.max(laneCount, 1)];
+        for (int i = 0; i < lanes.length; i++)
+        {
+            lanes[i] = new Lane();
+        }
+    }
+
+    public void dispatch(final UUID sender, final Runnable work)
+    {
+        if (executor == null)
+        {
+            runSafely(work);
+            return;
+        }
+
+        final Lane lane = lanes[Math.floorMod(sender.hashCode(), lanes.length)];
+        lane.queue.add(work);
+        lane.schedule();
+    }
+
+    private static void runSafely(final Runnable work)
+    {
+        try
+        {
+            work.run();
+        }
+        catch (Exception e)
+        {
+            logger.error("Error dispatching inbound message", e);
+        }
+    }
+
+    private class Lane implements Runnable
+    {
+        private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+        private void schedule()
+        {
+            if (scheduled.compareAndSet(false, true))
+            {
+                try
+                {
+                    executor.execute(this);
+                }
+                catch (RejectedExecutionException e)
+                {
+                    scheduled.set(false);
+                    logger.error("Inbound dispatch executor rejected work", e);
+                }
+            }
+        }
+
+        @Override
+        public void run()
+        {
+            // Drain a bounded batch so that one busy sender doesn't monopolize an executor thread.
+            Runnable work;
+            for (int i = 0; i < batchSize && (work = queue.poll()) != null; i++)
+            {
+                runSafely(work);
+            }
+
+            scheduled.set(false);
+            if (!queue.isEmpty())
+            {
+                schedule();
+            }
+        }
+    }
+}
@@ -40,6 +40,51 @@ public class RedisKeyGenerator
         return RedisKeyGenerator.key("cluster", Pair.of("clusterName", clusterName));
     }
 
+    @SuppressWarnings("unchecked")
+    public static String multicastKey(final String clusterName) {
+        return RedisKeyGenerator.key("multicast", Pair.of("clusterName", clusterName));
+    }
+
+    @SuppressWarnings("unchecked")
+    public static String gossipKey(final String clusterName, final String nodeId) {
+        return RedisKeyGenerator.key("gossip", Pair.of("clusterName", clusterName), Pair.of("nodeId", nodeId));
+    }
+
+    @SuppressWarnings("unchecked")
+    public static String gossipMembersKey(final String clusterName) {
+        return RedisKeyGenerator.key("gossipMembers", Pair.of("clusterName", clusterName));
+    }
+
+    @SuppressWarnings("unchecked")
+    public static String leaseKey(final String clusterName, final String nodeId) {
+        return RedisKeyGenerator.key("lease", Pair.of("clusterName", clusterName), Pair.of("nodeId", nodeId));
+    }
+
+    @SuppressWarnings("unchecked")
+    public static String membershipStreamKey(final String clusterName) {
+        return RedisKeyGenerator.key("membershipStream", Pair.of("clusterName", clusterName));
+    }
+
+    @SuppressWarnings("unchecked")
+    public static String membershipSnapshotKey(final String clusterName) {
+        return RedisKeyGenerator.key("membershipSnapshot", Pair.of("clusterName", clusterName));
+    }
+
+    @SuppressWarnings("unchecked")
+    public static String membershipLivenessKey(final String clusterName) {
+        return RedisKeyGenerator.key("membershipLiveness", Pair.of("clusterName", clusterName));
+    }
+
+    @SuppressWarnings("unchecked")
+    public static String clusterSnapshotKey(final String clusterName) {
+        return RedisKeyGenerator.key("clusterSnapshot", Pair.of("clusterName", clusterName));
+    }
+
+    @SuppressWarnings("unchecked")
+    public static String hostableInterfacesKey(final String clusterName, final String hash) {
+        return RedisKeyGenerator.key("hostableInterfaces", Pair.of("clusterName", clusterName), Pair.of("hash", hash));
+    }
+
     @SuppressWarnings("unchecked")
     public static String nodeKey(final String clusterName, final String nodeId) {
         return RedisKeyGenerator.key("node", Pair.of("clusterName", clusterName), Pair.of("nodeId", nodeId));
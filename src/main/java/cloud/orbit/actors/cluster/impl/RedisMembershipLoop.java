@@ -0,0 +1,148 @@
+/*
+ Copyright (C) 2018 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package cloud.orbit.actors.cluster.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cloud.orbit.actors.cluster.NodeAddress;
+import cloud.orbit.actors.cluster.heartbeat.RedisClusterHeartBeat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * The <code>RedisMembershipLoop</code> applies received heartbeats on a single dedicated thread, so that membership
+ * work neither contends with itself nor competes with actor message dispatch for executor threads.
+ *
+ * At most one heartbeat per sender is pending: a heartbeat that arrives while an older one from the same sender is
+ * still queued is merged into it with <code>RedisClusterHeartBeat.coalesce</code>. After a pause or a burst, each
+ * sender therefore costs one tracker update rather than one per stale heartbeat.
+ */
+public class RedisMembershipLoop
+{
+    private static Logger logger = LoggerFactory.getLogger(RedisMembershipLoop.class);
+
+    private final ConcurrentMap<NodeAddress, RedisClusterHeartBeat> pending = new ConcurrentHashMap<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final Consumer<RedisClusterHeartBeat> handler;
+    private final ExecutorService executor;
+
+    public RedisMembershipLoop(final String clusterName, final Consumer<RedisClusterHeartBeat> handler)
+    {
+        this.handler = handler;
+        this.executor = Executors.newSingleThreadExecutor(runnable ->
+        {
+            final Thread thread = new Thread(runnable, "orbit-redis-membership-" + clusterName);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void submit(final RedisClusterHeartBeat heartBeat)
+    {
+        pending.merge(heartBeat.getNodeAddress(), heartBeat, RedisClusterHeartBeat::coalesce);
+        if (scheduled.compareAndSet(false, true))
+        {
+            try
+            {
+                executor.execute(this::drain);
+            }
+            catch (RejectedExecutionException e)
+            {
+                // Only happens after shutdown, when heartbeats no longer matter.
+                scheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * Runs other membership work, such as applying a hostable interface set that was fetched in the background, on
+     * the membership thread.
+     */
+    public void execute(final Runnable task)
+    {
+        try
+        {
+            executor.execute(task);
+        }
+        catch (RejectedExecutionException e)
+        {
+            // Only happens after shutdown.
+        }
+    }
+
+    public int getPendingCount()
+    {
+        return pending.size();
+    }
+
+    public void shutdown()
+    {
+        executor.shutdown();
+    }
+
+    private void drain()
+    {
+        final List<RedisClusterHeartBeat> batch = new ArrayList<>();
+        do
+        {
+            for (final NodeAddress sender : pending.keySet())
+            {
+                final RedisClusterHeartBeat heartBeat = pending.remove(sender);
+                if (heartBeat != null)
+                {
+                    batch.add(heartBeat);
+                }
+            }
+            for (final RedisClusterHeartBeat heartBeat : batch)
+            {
+                try
+                {
+                    handler.accept(heartBeat);
+                }
+                catch (Exception e)
+                {
+                    logger.error("Error applying heartbeat from {}", heartBeat.getNodeAddress(), e);
+                }
+            }
+            batch.clear();
+            scheduled.set(false);
+        }
+        // A heartbeat may have been queued after we emptied the map but before we cleared the flag.
+        while (!pending.isEmpty() && scheduled.compareAndSet(false, true));
+    }
+}
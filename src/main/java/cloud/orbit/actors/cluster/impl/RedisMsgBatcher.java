@@ -0,0 +1,199 @@
+/*
+ Copyright (C) 2018 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package cloud.orbit.actors.cluster.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+/**
+ * A <code>RedisMsgBatcher</code> coalesces outbound <code>RedisMsg</code>s addressed to the same node channel into a
+ * single <code>RedisMsgBatch</code>. A batch is published as soon as it holds <code>flushCount</code> messages, or
+ * once the flush interval elapses, whichever comes first -- i.e. it shares the flush window of the Redis pipeline.
+ *
+ * Messages waiting in batches count against the outbound queue size: once more than <code>maxPendingMessages</code>
+ * are waiting, every batch is published, so that the publishing client's overflow policy applies to them.
+ *
+ * Once shut down, messages are published one by one as they are sent, so nothing is left in a batch that no longer
+ * gets flushed.
+ */
+public class RedisMsgBatcher
+{
+    private static Logger logger = LoggerFactory.getLogger(RedisMsgBatcher.class);
+
+    private final BiFunction<String, Object, CompletableFuture<Long>> publisher;
+    private final int flushCount;
+    private final int maxPendingMessages; // 0 when unbounded
+    private final ConcurrentMap<String, PendingBatch> pendingBatches = new ConcurrentHashMap<>();
+    private final AtomicInteger pendingMessages = new AtomicInteger();
+    private final ScheduledExecutorService executor;
+    private volatile boolean shutdown = false;
+
+    public RedisMsgBatcher(final RedisConnectionManager redisConnectionManager, final long flushIntervalMillis, final int flushCount, final int maxPendingMessages)
+    {
+        this(redisConnectionManager::sendMessageToNodeChannel, flushIntervalMillis, flushCount, maxPendingMessages);
+    }
+
+    RedisMsgBatcher(final BiFunction<String, Object, CompletableFuture<Long>> publisher, final long flushIntervalMillis, final int flushCount, final int maxPendingMessages)
+    {
+        this.publisher = publisher;
+        this.flushCount = flushCount;
+        this.maxPendingMessages = maxPendingMessages;
+
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable ->
+        {
+            final Thread thread = new Thread(runnable, "orbit-redis-msg-batcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final long interval = Math.max(flushIntervalMillis, 1L);
+        executor.scheduleAtFixedRate(() ->
+        {
+            try
+            {
+                flush();
+            }
+            catch (Exception e)
+            {
+                logger.error("Error flushing message batches", e);
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queues a message for its node channel. The returned future completes once the batch carrying the message has
+     * been published.
+     */
+    public CompletableFuture<Long> send(final String channelId, final RedisMsg redisMsg)
+    {
+        if (shutdown)
+        {
+            return publisher.apply(channelId, redisMsg);
+        }
+
+        final CompletableFuture<Long> result = new CompletableFuture<>();
+        final PendingBatch[] readyBatch = new PendingBatch[1];
+        // Batches are only changed and taken out of the map atomically, per channel, so a batch being published never
+        // takes more messages.
+        pendingBatches.compute(channelId, (k, pendingBatch) ->
+        {
+            final PendingBatch batch = pendingBatch != null ? pendingBatch : new PendingBatch();
+            batch.messages.add(redisMsg);
+            batch.futures.add(result);
+            pendingMessages.incrementAndGet();
+            if (batch.messages.size() >= flushCount)
+            {
+                readyBatch[0] = batch;
+                return null;
+            }
+            return batch;
+        });
+
+        if (readyBatch[0] != null)
+        {
+            publish(channelId, readyBatch[0]);
+        }
+        // A message that raced with shutdown() may have landed after its final flush.
+        if (shutdown || (maxPendingMessages > 0 && pendingMessages.get() > maxPendingMessages))
+        {
+            flush();
+        }
+        return result;
+    }
+
+    /**
+     * Publishes every non-empty pending batch.
+     */
+    public void flush()
+    {
+        for (final String channelId : pendingBatches.keySet())
+        {
+            final PendingBatch pendingBatch = pendingBatches.remove(channelId);
+            if (pendingBatch != null)
+            {
+                publish(channelId, pendingBatch);
+            }
+        }
+    }
+
+    public void shutdown()
+    {
+        shutdown = true;
+        executor.shutdown();
+        flush();
+    }
+
+    /**
+     * Returns the number of node channels with a batch waiting to be published.
+     */
+    public int getPendingBatchCount()
+    {
+        return pendingBatches.size();
+    }
+
+    private void publish(final String channelId, final PendingBatch batch)
+    {
+        pendingMessages.addAndGet(-batch.messages.size());
+
+        // A lone message doesn't need an envelope.
+        final Object msg = batch.messages.size() == 1 ? batch.messages.get(0) : new RedisMsgBatch(batch.messages);
+        publisher.apply(channelId, msg)
+                .whenComplete((numClientsReceived, exception) ->
+                {
+                    for (final CompletableFuture<Long> future : batch.futures)
+                    {
+                        if (exception != null)
+                        {
+                            future.completeExceptionally(exception);
+                        }
+                        else
+                        {
+                            future.complete(numClientsReceived);
+                        }
+                    }
+                });
+    }
+
+    private static class PendingBatch
+    {
+        // only changed while in the map, under its lock for the channel
+        private final List<RedisMsg> messages = new ArrayList<>();
+        private final List<CompletableFuture<Long>> futures = new ArrayList<>();
+    }
+}
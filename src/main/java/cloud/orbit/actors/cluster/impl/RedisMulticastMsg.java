@@ -0,0 +1,89 @@
+/*
+ Copyright (C) 2018 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package cloud.orbit.actors.cluster.impl;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * A <code>RedisMulticastMsg</code> carries a single payload for several nodes. It is published once on the cluster's
+ * multicast channel, and each subscriber only delivers it if it is one of the listed recipients.
+ */
+public class RedisMulticastMsg implements Serializable
+{
+    private UUID senderAddress;
+    private Set<UUID> recipientAddresses;
+    private byte[] messageContents;
+
+    public RedisMulticastMsg(final UUID senderAddress, final Collection<UUID> recipientAddresses, final byte[] messageContents)
+    {
+        this.senderAddress = senderAddress;
+        this.recipientAddresses = new LinkedHashSet<>(recipientAddresses);
+        this.messageContents = messageContents;
+    }
+
+    public UUID getSenderAddress()
+    {
+        return senderAddress;
+    }
+
+    public Set<UUID> getRecipientAddresses()
+    {
+        return recipientAddresses;
+    }
+
+    public byte[] getMessageContents()
+    {
+        return messageContents;
+    }
+
+    @Override
+    public boolean equals(final Object o)
+    {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        final RedisMulticastMsg that = (RedisMulticastMsg) o;
+        return Objects.equals(senderAddress, that.senderAddress) &&
+                Objects.equals(recipientAddresses, that.recipientAddresses) &&
+                Arrays.equals(messageContents, that.messageContents);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        int result = Objects.hash(senderAddress, recipientAddresses);
+        result = 31 * result + Arrays.hashCode(messageContents);
+        return result;
+    }
+}
@@ -42,12 +42,18 @@ import io.lettuce.core.cluster.ClusterTopologyRefreshOptions;
 import io.lettuce.core.cluster.RedisClusterClient;
 import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
 import io.lettuce.core.codec.RedisCodec;
+import io.lettuce.core.output.IntegerOutput;
+import io.lettuce.core.output.StatusOutput;
+import io.lettuce.core.output.ValueListOutput;
+import io.lettuce.core.protocol.CommandArgs;
+import io.lettuce.core.protocol.CommandType;
 import io.lettuce.core.resource.DefaultClientResources;
 import io.lettuce.core.resource.DirContextDnsResolver;
 
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
@@ -57,6 +63,20 @@ public class LettuceClient<K, V>
 {
     private static Logger logger = LoggerFactory.getLogger(LettuceClient.class);
 
+    // Scripts that read TIME must replicate their effects rather than themselves (Redis 3.2+).
+    private static final String SERVER_TIME_MILLIS =
+            "redis.replicate_commands() " +
+            "local time = redis.call('TIME') " +
+            "local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000) ";
+    private static final String ZADD_AFTER_SERVER_TIME_SCRIPT = SERVER_TIME_MILLIS +
+            "return redis.call('ZADD', KEYS[1], now + tonumber(ARGV[2]), ARGV[1])";
+    private static final String ZREM_BEFORE_SERVER_TIME_SCRIPT = SERVER_TIME_MILLIS +
+            "local removed = {} " +
+            "for _, member in ipairs(redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', now)) do " +
+            "  if member ~= ARGV[1] then redis.call('ZREM', KEYS[1], member) removed[#removed + 1] = member end " +
+            "end " +
+            "return removed";
+
     private final RedisClusterClient redisClusterClient;
     private final RedisClient redisSingleClient;
 
@@ -170,6 +190,53 @@ public class LettuceClient<K, V>
 
     }
 
+    /**
+     * Appends an entry to a stream (XADD), trimming it to about <code>maxLength</code> entries; returns the new id.
+     */
+    public CompletableFuture<String> xadd(final K key, final long maxLength, final Map<String, V> fields) {
+        final CommandArgs<K, V> args = new CommandArgs<>(codec).addKey(key).add("MAXLEN").add("~").add(maxLength).add("*");
+        fields.forEach((field, value) -> args.add(field).addValue(value));
+        return commands().dispatch(RedisStreamCommand.XADD, new StatusOutput<>(codec), args).toCompletableFuture();
+    }
+
+    /**
+     * Reads up to <code>count</code> entries of a stream after <code>id</code> (XREAD), waiting up to
+     * <code>blockMillis</code> for one to arrive; returns an empty list if none did.
+     */
+    public CompletableFuture<List<RedisStreamEntry<V>>> xread(final K key, final String id, final long count, final long blockMillis) {
+        final CommandArgs<K, V> args = new CommandArgs<>(codec).add("COUNT").add(count).add("BLOCK").add(blockMillis)
+                .add("STREAMS").addKey(key).add(id);
+        return commands().dispatch(RedisStreamCommand.XREAD, RedisStreamOutput.forRead(codec), args).toCompletableFuture();
+    }
+
+    /**
+     * Returns the last <code>count</code> entries of a stream, newest first (XREVRANGE).
+     */
+    public CompletableFuture<List<RedisStreamEntry<V>>> xrevrange(final K key, final long count) {
+        final CommandArgs<K, V> args = new CommandArgs<>(codec).addKey(key).add("+").add("-").add("COUNT").add(count);
+        return commands().dispatch(RedisStreamCommand.XREVRANGE, RedisStreamOutput.forRange(codec), args).toCompletableFuture();
+    }
+
+    /**
+     * Sets <code>member</code>'s score in a sorted set to <code>ttlMillis</code> past the server's clock (Redis TIME),
+     * so that scores never depend on the clocks of the clients; returns 1 if the member was added rather than updated.
+     */
+    public CompletableFuture<Long> zaddAfterServerTime(final K key, final long ttlMillis, final V member) {
+        final CommandArgs<K, V> args = new CommandArgs<>(codec).add(ZADD_AFTER_SERVER_TIME_SCRIPT).add(1).addKey(key)
+                .addValue(member).add(ttlMillis);
+        return commands().dispatch(CommandType.EVAL, new IntegerOutput<>(codec), args).toCompletableFuture();
+    }
+
+    /**
+     * Removes and returns the members of a sorted set whose score has passed the server's clock (Redis TIME), except
+     * <code>kept</code>. Concurrent callers never both remove the same member.
+     */
+    public CompletableFuture<List<V>> zremBeforeServerTime(final K key, final V kept) {
+        final CommandArgs<K, V> args = new CommandArgs<>(codec).add(ZREM_BEFORE_SERVER_TIME_SCRIPT).add(1).addKey(key)
+                .addValue(kept);
+        return commands().dispatch(CommandType.EVAL, new ValueListOutput<>(codec), args).toCompletableFuture();
+    }
+
     public void shutdown() {
         try {
             if (redisClusterClient != null)
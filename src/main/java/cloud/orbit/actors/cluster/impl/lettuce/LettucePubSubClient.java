@@ -31,14 +31,24 @@ package cloud.orbit.actors.cluster.impl.lettuce;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import cloud.orbit.actors.cluster.RedisOutboundOverflowPolicy;
 import io.lettuce.core.RedisClient;
+import io.lettuce.core.codec.RedisCodec;
+import io.lettuce.core.pubsub.RedisPubSubAdapter;
 import io.lettuce.core.pubsub.RedisPubSubListener;
 import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
 import io.lettuce.core.pubsub.api.async.RedisPubSubAsyncCommands;
+import io.netty.util.concurrent.FastThreadLocalThread;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -53,23 +63,48 @@ public class LettucePubSubClient
     private final StatefulRedisPubSubConnection<String, Object> redisPublishingConnection;
     private final RedisPubSubAsyncCommands<String, Object> redisPublishingAsyncCommands;
 
+    // Every subscription's listener, by channel; a single router on the subscribing connection dispatches to them.
+    private final ConcurrentMap<String, RedisPubSubListener<String, Object>> channelListeners = new ConcurrentHashMap<>();
+    // Prefix subscriptions, by the pattern they were subscribed with.
+    private final ConcurrentMap<String, PrefixSubscription> prefixSubscriptions = new ConcurrentHashMap<>();
+
     private final AtomicInteger commandCounter = new AtomicInteger(1);
     private final AtomicBoolean flushed = new AtomicBoolean(false);
     private final int pipelineFlushCount;
 
+    // Bounds the number of published messages that Redis has not yet acknowledged; null when unbounded.
+    private final Semaphore outboundPermits;
+    private final AtomicInteger inFlightCount = new AtomicInteger();
+    // With DROP_OLDEST, messages waiting for a permit; they haven't been handed to Lettuce yet. Guarded by itself.
+    private final Deque<PendingPublish> backlog = new ArrayDeque<>();
+    private final int backlogCapacity;
+    private final RedisOutboundOverflowPolicy overflowPolicy;
+    private final long outboundBlockTimeoutMillis;
+
     private ScheduledExecutorService executor;
     private final String redisUrl;
 
-    public LettucePubSubClient(final String resolvedUri, long pipelineFlushIntervalMillis, int pipelineFlushCount)
+    public LettucePubSubClient(
+            final String resolvedUri,
+            final RedisCodec<String, Object> codec,
+            long pipelineFlushIntervalMillis,
+            int pipelineFlushCount,
+            final int outboundQueueSize,
+            final RedisOutboundOverflowPolicy overflowPolicy,
+            final long outboundBlockTimeoutMillis)
     {
-        FstStringObjectCodec codec = new FstStringObjectCodec();
         this.pipelineFlushCount = pipelineFlushCount;
+        this.outboundPermits = outboundQueueSize > 0 ? new Semaphore(outboundQueueSize) : null;
+        this.backlogCapacity = outboundQueueSize;
+        this.overflowPolicy = overflowPolicy;
+        this.outboundBlockTimeoutMillis = outboundBlockTimeoutMillis;
         boolean autoFlush = pipelineFlushIntervalMillis < 1;
 
         this.redisUrl = resolvedUri;
         this.redisClient = RedisClient.create(resolvedUri);
 
-        this.redisSubscribingConnection = this.redisClient.connectPubSub(codec);
+        this.redisSubscribingConnection = this.redisClient.connectPubSub(new RedisChannelFilterCodec<>(codec, this::isRouted));
+        this.redisSubscribingConnection.addListener(new ChannelRouter());
         this.redisSubscribingAsyncCommands = this.redisSubscribingConnection.async();
         this.redisSubscribingAsyncCommands.setAutoFlushCommands(true); // No redis pipelining on subscriptions
 
@@ -109,13 +144,19 @@ public class LettucePubSubClient
 
     public CompletableFuture<Void> subscribe(final String channelId, final RedisPubSubListener<String, Object> messageListener)
     {
+        if (channelListeners.putIfAbsent(channelId, messageListener) != null)
+        {
+            // Already subscribed; a channel has exactly one listener.
+            return CompletableFuture.completedFuture(null);
+        }
+
         if (this.redisSubscribingConnection.isOpen())
         {
-            this.redisSubscribingConnection.addListener(messageListener);
             return this.redisSubscribingAsyncCommands.subscribe(channelId).toCompletableFuture();
         }
         else
         {
+            channelListeners.remove(channelId, messageListener);
             logger.error("Error subscribing to channel [{}]", channelId);
             final CompletableFuture<Void> result = new CompletableFuture<>();
             result.completeExceptionally(new IllegalStateException("Error subscribing to channel..."));
@@ -123,23 +164,244 @@ public class LettucePubSubClient
         }
     }
 
-    public CompletableFuture<Long> publish(final String channelId, final Object redisMsg)
+    /**
+     * Subscribes to every channel whose name starts with <code>channelPrefix</code> (with PSUBSCRIBE). The listener is
+     * given each message's actual channel.
+     */
+    public CompletableFuture<Void> subscribeToPrefix(final String channelPrefix, final RedisPubSubListener<String, Object> messageListener)
     {
-        if (this.redisPublishingConnection.isOpen())
+        final String pattern = escapePattern(channelPrefix) + "*";
+        final PrefixSubscription subscription = new PrefixSubscription(channelPrefix, messageListener);
+        if (prefixSubscriptions.putIfAbsent(pattern, subscription) != null)
         {
-            return this.redisPublishingAsyncCommands.publish(channelId, redisMsg).toCompletableFuture()
-                    .thenApply(r -> {
-                        this.checkFlush();
-                        return r;
-                    });
+            return CompletableFuture.completedFuture(null);
+        }
+
+        if (this.redisSubscribingConnection.isOpen())
+        {
+            return this.redisSubscribingAsyncCommands.psubscribe(pattern).toCompletableFuture();
         }
         else
+        {
+            prefixSubscriptions.remove(pattern, subscription);
+            logger.error("Error subscribing to pattern [{}]", pattern);
+            final CompletableFuture<Void> result = new CompletableFuture<>();
+            result.completeExceptionally(new IllegalStateException("Error subscribing to pattern..."));
+            return result;
+        }
+    }
+
+    /**
+     * Escapes the characters that are special in Redis glob-style patterns.
+     */
+    static String escapePattern(final String literal)
+    {
+        final StringBuilder pattern = new StringBuilder(literal.length());
+        for (final char c : literal.toCharArray())
+        {
+            if (c == '*' || c == '?' || c == '[' || c == ']' || c == '\\')
+            {
+                pattern.append('\\');
+            }
+            pattern.append(c);
+        }
+        return pattern.toString();
+    }
+
+    private boolean isRouted(final String channel)
+    {
+        if (channelListeners.containsKey(channel))
+        {
+            return true;
+        }
+        for (final PrefixSubscription subscription : prefixSubscriptions.values())
+        {
+            if (channel.startsWith(subscription.channelPrefix))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public CompletableFuture<Void> unsubscribe(final String channelId)
+    {
+        if (channelListeners.remove(channelId) == null || !this.redisSubscribingConnection.isOpen())
+        {
+            return CompletableFuture.completedFuture(null);
+        }
+        return this.redisSubscribingAsyncCommands.unsubscribe(channelId).toCompletableFuture();
+    }
+
+    public boolean isSubscribed(final String channelId)
+    {
+        return channelListeners.containsKey(channelId);
+    }
+
+    public CompletableFuture<Long> publish(final String channelId, final Object redisMsg)
+    {
+        if (!this.redisPublishingConnection.isOpen())
         {
             logger.error("Error publishing message to channel [{}]", channelId);
             final CompletableFuture<Long> result = new CompletableFuture<>();
             result.completeExceptionally(new IllegalStateException("Error publishing to channel..."));
             return result;
         }
+
+        if (outboundPermits == null)
+        {
+            return dispatch(channelId, redisMsg, false);
+        }
+        if (outboundPermits.tryAcquire())
+        {
+            return dispatch(channelId, redisMsg, true);
+        }
+
+        switch (overflowPolicy)
+        {
+            case BLOCK:
+                if (awaitOutboundPermit())
+                {
+                    return dispatch(channelId, redisMsg, true);
+                }
+                break;
+
+            case DROP_OLDEST:
+                return enqueue(channelId, redisMsg);
+
+            case FAIL_FAST:
+            default:
+                break;
+        }
+
+        final CompletableFuture<Long> result = new CompletableFuture<>();
+        result.completeExceptionally(new RejectedExecutionException("Outbound queue to " + redisUrl + " is full"));
+        return result;
+    }
+
+    /**
+     * Hands a message to Lettuce; with <code>permitted</code>, it holds an outbound permit until Redis acknowledges it.
+     */
+    private CompletableFuture<Long> dispatch(final String channelId, final Object redisMsg, final boolean permitted)
+    {
+        final CompletableFuture<Long> published = this.redisPublishingAsyncCommands.publish(channelId, redisMsg).toCompletableFuture();
+        if (permitted)
+        {
+            inFlightCount.incrementAndGet();
+            published.whenComplete((r, e) ->
+            {
+                inFlightCount.decrementAndGet();
+                outboundPermits.release();
+                dispatchBacklog();
+            });
+        }
+
+        return published
+                .thenApply(r -> {
+                    this.checkFlush();
+                    return r;
+                });
+    }
+
+    /**
+     * Flushes the publishing pipeline and returns a future that completes once Redis has processed every publish
+     * issued before this call.
+     */
+    public CompletableFuture<Void> drain()
+    {
+        if (!this.redisPublishingConnection.isOpen())
+        {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        // Commands on a connection complete in order, so a trailing PING completes after everything before it.
+        final CompletableFuture<String> ping = this.redisPublishingAsyncCommands.ping().toCompletableFuture();
+        flush();
+        return ping.thenApply(r -> null);
+    }
+
+    private boolean awaitOutboundPermit()
+    {
+        // Lettuce completes commands, and so releases permits, on its event loop: waiting there would deadlock.
+        if (Thread.currentThread() instanceof FastThreadLocalThread)
+        {
+            return false;
+        }
+
+        // Make sure the pipelined commands we are waiting on are actually on their way.
+        flush();
+        try
+        {
+            return outboundPermits.tryAcquire(outboundBlockTimeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Queues a message until a permit frees up, dropping the oldest queued message if the backlog is full. Messages
+     * already handed to Lettuce are never dropped, so both the in-flight and the queued messages stay bounded.
+     */
+    private CompletableFuture<Long> enqueue(final String channelId, final Object redisMsg)
+    {
+        final PendingPublish pending = new PendingPublish(channelId, redisMsg);
+        final PendingPublish dropped;
+        synchronized (backlog)
+        {
+            backlog.addLast(pending);
+            dropped = backlog.size() > backlogCapacity ? backlog.pollFirst() : null;
+        }
+        if (dropped != null)
+        {
+            dropped.result.cancel(false);
+        }
+
+        // A permit may have been released while we were queueing; either way, get the in-flight messages moving.
+        dispatchBacklog();
+        flush();
+        return pending.result;
+    }
+
+    private void dispatchBacklog()
+    {
+        while (true)
+        {
+            final PendingPublish next;
+            synchronized (backlog)
+            {
+                if (backlog.isEmpty() || !outboundPermits.tryAcquire())
+                {
+                    return;
+                }
+                next = backlog.pollFirst();
+            }
+            dispatch(next.channelId, next.redisMsg, true).whenComplete((r, e) ->
+            {
+                if (e != null)
+                {
+                    next.result.completeExceptionally(e);
+                }
+                else
+                {
+                    next.result.complete(r);
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns the number of published messages not yet acknowledged by Redis, including those waiting for a permit.
+     * Only tracked when the outbound queue is bounded.
+     */
+    public int getOutboundQueueDepth()
+    {
+        synchronized (backlog)
+        {
+            return inFlightCount.get() + backlog.size();
+        }
     }
 
     private void checkFlush()
@@ -166,6 +428,67 @@ public class LettucePubSubClient
     }
 
 
+    /**
+     * Routes each message on the subscribing connection to the listener of its channel only.
+     */
+    private class ChannelRouter extends RedisPubSubAdapter<String, Object>
+    {
+        @Override
+        public void message(final String channel, final Object message)
+        {
+            final RedisPubSubListener<String, Object> listener = channelListeners.get(channel);
+            if (listener != null && message != null)
+            {
+                listener.message(channel, message);
+            }
+        }
+
+        @Override
+        public void message(final String pattern, final String channel, final Object message)
+        {
+            final PrefixSubscription subscription = prefixSubscriptions.get(pattern);
+            if (subscription != null && message != null)
+            {
+                subscription.messageListener.message(channel, message);
+            }
+        }
+
+        @Override
+        public void subscribed(final String channel, final long count)
+        {
+            final RedisPubSubListener<String, Object> listener = channelListeners.get(channel);
+            if (listener != null)
+            {
+                listener.subscribed(channel, count);
+            }
+        }
+    }
+
+    private static class PrefixSubscription
+    {
+        private final String channelPrefix;
+        private final RedisPubSubListener<String, Object> messageListener;
+
+        private PrefixSubscription(final String channelPrefix, final RedisPubSubListener<String, Object> messageListener)
+        {
+            this.channelPrefix = channelPrefix;
+            this.messageListener = messageListener;
+        }
+    }
+
+    private static class PendingPublish
+    {
+        private final String channelId;
+        private final Object redisMsg;
+        private final CompletableFuture<Long> result = new CompletableFuture<>();
+
+        private PendingPublish(final String channelId, final Object redisMsg)
+        {
+            this.channelId = channelId;
+            this.redisMsg = redisMsg;
+        }
+    }
+
     public void shutdown()
     {
         try {
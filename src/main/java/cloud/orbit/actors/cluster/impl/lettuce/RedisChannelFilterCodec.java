@@ -0,0 +1,87 @@
+/*
+ Copyright (C) 2018 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package cloud.orbit.actors.cluster.impl.lettuce;
+
+import io.lettuce.core.codec.RedisCodec;
+
+import java.nio.ByteBuffer;
+import java.util.function.Predicate;
+
+/**
+ * A <code>RedisChannelFilterCodec</code> wraps the codec of a subscribing pub/sub connection and skips decoding the
+ * payload of messages on channels that nobody listens to (e.g. a message that raced an unsubscribe); those are
+ * delivered as <code>null</code> instead.
+ *
+ * Lettuce decodes a pub/sub message's channel (as a key) immediately before its payload, on the connection's event
+ * loop, so the channel is remembered between the two calls. An instance must therefore only be used by one connection.
+ */
+public class RedisChannelFilterCodec<V> implements RedisCodec<String, V>
+{
+    private final RedisCodec<String, V> codec;
+    private final Predicate<String> channelFilter;
+    private String lastDecodedKey;
+
+    public RedisChannelFilterCodec(final RedisCodec<String, V> codec, final Predicate<String> channelFilter)
+    {
+        this.codec = codec;
+        this.channelFilter = channelFilter;
+    }
+
+    @Override
+    public String decodeKey(final ByteBuffer bytes)
+    {
+        final String key = codec.decodeKey(bytes);
+        lastDecodedKey = key;
+        return key;
+    }
+
+    @Override
+    public V decodeValue(final ByteBuffer bytes)
+    {
+        final String channel = lastDecodedKey;
+        lastDecodedKey = null;
+        if (channel != null && !channelFilter.test(channel))
+        {
+            return null;
+        }
+        return codec.decodeValue(bytes);
+    }
+
+    @Override
+    public ByteBuffer encodeKey(final String key)
+    {
+        return codec.encodeKey(key);
+    }
+
+    @Override
+    public ByteBuffer encodeValue(final V value)
+    {
+        return codec.encodeValue(value);
+    }
+}
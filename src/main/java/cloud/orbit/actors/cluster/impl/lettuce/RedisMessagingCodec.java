@@ -0,0 +1,304 @@
+/*
+ Copyright (C) 2018 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package cloud.orbit.actors.cluster.impl.lettuce;
+
+import cloud.orbit.actors.cluster.heartbeat.RedisClusterHeartBeat;
+import cloud.orbit.actors.cluster.heartbeat.RedisClusterHeartBeatCodec;
+import cloud.orbit.actors.cluster.impl.RedisMsg;
+import cloud.orbit.actors.cluster.impl.RedisMsgBatch;
+import cloud.orbit.actors.cluster.impl.RedisMulticastMsg;
+import io.lettuce.core.codec.ToByteBufEncoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The <code>RedisMessagingCodec</code> is the codec used on the messaging (pub/sub) connections. Node-to-node
+ * messages are by far the hottest path, so <code>RedisMsg</code> and <code>RedisMsgBatch</code> get a dedicated wire
+ * format instead of going through FST:
+ *
+ * <pre>
+ *     RedisMsg:      [type][sender UUID (16 bytes)][payload...]
+ *     RedisMsgBatch: [type][count (int)]{[sender UUID (16 bytes)][payload length (int)][payload...]}*
+ *     RedisMulticastMsg: [type][sender UUID (16 bytes)][recipient count (int)]{[recipient UUID (16 bytes)]}*[payload...]
+ * </pre>
+ *
+ * Heartbeats are encoded by <code>RedisClusterHeartBeatCodec</code>. Everything else is prefixed with a type tag and
+ * serialized by FST as before.
+ *
+ * Every node receives each multicast message. When created with the local node's address, the codec only copies the
+ * payload of multicast messages that list it as a recipient; the others decode with an empty payload.
+ */
+public class RedisMessagingCodec extends FstStringObjectCodec implements ToByteBufEncoder<String, Object>
+{
+    private static final byte TYPE_OBJECT = 0;
+    private static final byte TYPE_MSG = 1;
+    private static final byte TYPE_MSG_BATCH = 2;
+    private static final byte TYPE_MULTICAST_MSG = 3;
+    private static final byte TYPE_HEARTBEAT = 4;
+
+    private static final int TYPE_SIZE = 1;
+    private static final int UUID_SIZE = 16;
+    private static final int LENGTH_SIZE = Integer.SIZE / 8;
+    private static final int DEFAULT_OBJECT_SIZE_ESTIMATE = 256;
+    private static final byte[] NO_CONTENTS = new byte[0];
+
+    private final UUID localAddress;
+
+    public RedisMessagingCodec()
+    {
+        this(null);
+    }
+
+    public RedisMessagingCodec(final UUID localAddress)
+    {
+        this.localAddress = localAddress;
+    }
+
+    @Override
+    public Object decodeValue(final ByteBuffer bytes)
+    {
+        final byte type = bytes.get();
+        switch (type)
+        {
+            case TYPE_MSG:
+                return readMsg(bytes, bytes.remaining() - UUID_SIZE);
+
+            case TYPE_MSG_BATCH:
+                final int count = bytes.getInt();
+                final List<RedisMsg> messages = new ArrayList<>(count);
+                for (int i = 0; i < count; ++i)
+                {
+                    final UUID senderAddress = new UUID(bytes.getLong(), bytes.getLong());
+                    final byte[] messageContents = new byte[bytes.getInt()];
+                    bytes.get(messageContents);
+                    messages.add(new RedisMsg(senderAddress, messageContents));
+                }
+                return new RedisMsgBatch(messages);
+
+            case TYPE_MULTICAST_MSG:
+                return readMulticastMsg(bytes);
+
+            case TYPE_HEARTBEAT:
+                return RedisClusterHeartBeatCodec.decode(bytes);
+
+            case TYPE_OBJECT:
+                return super.decodeValue(bytes);
+
+            default:
+                throw new IllegalStateException("Unknown messaging value type " + type);
+        }
+    }
+
+    private static RedisMsg readMsg(final ByteBuffer bytes, final int payloadLength)
+    {
+        final UUID senderAddress = new UUID(bytes.getLong(), bytes.getLong());
+        final byte[] messageContents = new byte[payloadLength];
+        bytes.get(messageContents);
+        return new RedisMsg(senderAddress, messageContents);
+    }
+
+    private RedisMulticastMsg readMulticastMsg(final ByteBuffer bytes)
+    {
+        final UUID senderAddress = new UUID(bytes.getLong(), bytes.getLong());
+        final int recipientCount = bytes.getInt();
+        final List<UUID> recipientAddresses = new ArrayList<>(recipientCount);
+        for (int i = 0; i < recipientCount; ++i)
+        {
+            recipientAddresses.add(new UUID(bytes.getLong(), bytes.getLong()));
+        }
+        if (localAddress != null && !recipientAddresses.contains(localAddress))
+        {
+            bytes.position(bytes.limit());
+            return new RedisMulticastMsg(senderAddress, recipientAddresses, NO_CONTENTS);
+        }
+        final byte[] messageContents = new byte[bytes.remaining()];
+        bytes.get(messageContents);
+        return new RedisMulticastMsg(senderAddress, recipientAddresses, messageContents);
+    }
+
+    @Override
+    public ByteBuffer encodeValue(final Object value)
+    {
+        if (value instanceof RedisMsg || value instanceof RedisMsgBatch || value instanceof RedisMulticastMsg)
+        {
+            final ByteBuffer bytes = ByteBuffer.allocate(estimateSize(value));
+            if (value instanceof RedisMsg)
+            {
+                final RedisMsg redisMsg = (RedisMsg) value;
+                bytes.put(TYPE_MSG);
+                writeUUID(bytes, redisMsg.getSenderAddress());
+                bytes.put(redisMsg.getMessageContents());
+            }
+            else if (value instanceof RedisMulticastMsg)
+            {
+                final RedisMulticastMsg multicastMsg = (RedisMulticastMsg) value;
+                bytes.put(TYPE_MULTICAST_MSG);
+                writeUUID(bytes, multicastMsg.getSenderAddress());
+                bytes.putInt(multicastMsg.getRecipientAddresses().size());
+                for (final UUID recipientAddress : multicastMsg.getRecipientAddresses())
+                {
+                    writeUUID(bytes, recipientAddress);
+                }
+                bytes.put(multicastMsg.getMessageContents());
+            }
+            else
+            {
+                final List<RedisMsg> messages = ((RedisMsgBatch) value).getMessages();
+                bytes.put(TYPE_MSG_BATCH);
+                bytes.putInt(messages.size());
+                for (final RedisMsg redisMsg : messages)
+                {
+                    writeUUID(bytes, redisMsg.getSenderAddress());
+                    bytes.putInt(redisMsg.getMessageContents().length);
+                    bytes.put(redisMsg.getMessageContents());
+                }
+            }
+            bytes.flip();
+            return bytes;
+        }
+
+        if (value instanceof RedisClusterHeartBeat)
+        {
+            final ByteBuf target = Unpooled.buffer(estimateSize(value));
+            encodeValue(value, target);
+            return target.nioBuffer();
+        }
+
+        final ByteBuffer object = super.encodeValue(value);
+        final ByteBuffer bytes = ByteBuffer.allocate(TYPE_SIZE + object.remaining());
+        bytes.put(TYPE_OBJECT);
+        bytes.put(object);
+        bytes.flip();
+        return bytes;
+    }
+
+    private static void writeUUID(final ByteBuffer bytes, final UUID uuid)
+    {
+        bytes.putLong(uuid.getMostSignificantBits());
+        bytes.putLong(uuid.getLeastSignificantBits());
+    }
+
+    @Override
+    public void encodeKey(final String key, final ByteBuf target)
+    {
+        ByteBufUtil.writeUtf8(target, key);
+    }
+
+    @Override
+    public void encodeValue(final Object value, final ByteBuf target)
+    {
+        if (value instanceof RedisMsg)
+        {
+            final RedisMsg redisMsg = (RedisMsg) value;
+            target.writeByte(TYPE_MSG);
+            writeUUID(target, redisMsg.getSenderAddress());
+            target.writeBytes(redisMsg.getMessageContents());
+        }
+        else if (value instanceof RedisMsgBatch)
+        {
+            final List<RedisMsg> messages = ((RedisMsgBatch) value).getMessages();
+            target.writeByte(TYPE_MSG_BATCH);
+            target.writeInt(messages.size());
+            for (final RedisMsg redisMsg : messages)
+            {
+                writeUUID(target, redisMsg.getSenderAddress());
+                target.writeInt(redisMsg.getMessageContents().length);
+                target.writeBytes(redisMsg.getMessageContents());
+            }
+        }
+        else if (value instanceof RedisClusterHeartBeat)
+        {
+            target.writeByte(TYPE_HEARTBEAT);
+            RedisClusterHeartBeatCodec.encode((RedisClusterHeartBeat) value, target);
+        }
+        else if (value instanceof RedisMulticastMsg)
+        {
+            final RedisMulticastMsg multicastMsg = (RedisMulticastMsg) value;
+            target.writeByte(TYPE_MULTICAST_MSG);
+            writeUUID(target, multicastMsg.getSenderAddress());
+            target.writeInt(multicastMsg.getRecipientAddresses().size());
+            for (final UUID recipientAddress : multicastMsg.getRecipientAddresses())
+            {
+                writeUUID(target, recipientAddress);
+            }
+            target.writeBytes(multicastMsg.getMessageContents());
+        }
+        else
+        {
+            target.writeByte(TYPE_OBJECT);
+            target.writeBytes(super.encodeValue(value));
+        }
+    }
+
+    private static void writeUUID(final ByteBuf target, final UUID uuid)
+    {
+        target.writeLong(uuid.getMostSignificantBits());
+        target.writeLong(uuid.getLeastSignificantBits());
+    }
+
+    @Override
+    public int estimateSize(final Object keyOrValue)
+    {
+        if (keyOrValue instanceof String)
+        {
+            return ByteBufUtil.utf8MaxBytes((String) keyOrValue);
+        }
+        if (keyOrValue instanceof RedisMsg)
+        {
+            return TYPE_SIZE + UUID_SIZE + ((RedisMsg) keyOrValue).getMessageContents().length;
+        }
+        if (keyOrValue instanceof RedisMsgBatch)
+        {
+            int size = TYPE_SIZE + LENGTH_SIZE;
+            for (final RedisMsg redisMsg : ((RedisMsgBatch) keyOrValue).getMessages())
+            {
+                size += UUID_SIZE + LENGTH_SIZE + redisMsg.getMessageContents().length;
+            }
+            return size;
+        }
+        if (keyOrValue instanceof RedisMulticastMsg)
+        {
+            final RedisMulticastMsg multicastMsg = (RedisMulticastMsg) keyOrValue;
+            return TYPE_SIZE + UUID_SIZE + LENGTH_SIZE
+                    + UUID_SIZE * multicastMsg.getRecipientAddresses().size()
+                    + multicastMsg.getMessageContents().length;
+        }
+        if (keyOrValue instanceof RedisClusterHeartBeat)
+        {
+            return TYPE_SIZE + RedisClusterHeartBeatCodec.estimateSize((RedisClusterHeartBeat) keyOrValue);
+        }
+        return DEFAULT_OBJECT_SIZE_ESTIMATE;
+    }
+}
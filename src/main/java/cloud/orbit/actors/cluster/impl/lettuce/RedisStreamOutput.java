@@ -0,0 +1,122 @@
+/*
+ Copyright (C) 2018 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package cloud.orbit.actors.cluster.impl.lettuce;
+
+import io.lettuce.core.codec.RedisCodec;
+import io.lettuce.core.output.CommandOutput;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decodes the stream entries in an XRANGE/XREVRANGE reply (entries at depth 2) or, for a single stream, an XREAD
+ * reply (entries at depth 4, below the stream name). Each entry is an array of its id and its field/value array.
+ */
+public class RedisStreamOutput<K, V> extends CommandOutput<K, V, List<RedisStreamEntry<V>>>
+{
+    private final int entryDepth;
+
+    // remaining element counts of the arrays we are in, innermost first
+    private final Deque<int[]> arrays = new ArrayDeque<>();
+    private Map<String, V> fields;
+    private String field;
+
+    private RedisStreamOutput(final RedisCodec<K, V> codec, final int entryDepth)
+    {
+        super(codec, new ArrayList<>());
+        this.entryDepth = entryDepth;
+    }
+
+    public static <K, V> RedisStreamOutput<K, V> forRange(final RedisCodec<K, V> codec)
+    {
+        return new RedisStreamOutput<>(codec, 2);
+    }
+
+    public static <K, V> RedisStreamOutput<K, V> forRead(final RedisCodec<K, V> codec)
+    {
+        return new RedisStreamOutput<>(codec, 4);
+    }
+
+    @Override
+    public void multi(final int count)
+    {
+        leaveFinishedArrays();
+        consumeElement();
+        if ( count > 0 )
+        {
+            arrays.push(new int[] { count });
+        }
+    }
+
+    @Override
+    public void set(final ByteBuffer bytes)
+    {
+        leaveFinishedArrays();
+        final int depth = arrays.size();
+        if ( bytes != null && depth == entryDepth )
+        {
+            fields = new LinkedHashMap<>();
+            output.add(new RedisStreamEntry<>(decodeAscii(bytes), fields));
+        }
+        else if ( depth == entryDepth + 1 && fields != null )
+        {
+            if ( field == null )
+            {
+                field = bytes != null ? decodeAscii(bytes) : "";
+            }
+            else
+            {
+                fields.put(field, bytes != null ? codec.decodeValue(bytes) : null);
+                field = null;
+            }
+        }
+        consumeElement();
+    }
+
+    private void leaveFinishedArrays()
+    {
+        while ( ! arrays.isEmpty() && arrays.peek()[0] == 0 )
+        {
+            arrays.pop();
+        }
+    }
+
+    private void consumeElement()
+    {
+        if ( ! arrays.isEmpty() )
+        {
+            arrays.peek()[0]--;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ Copyright (C) 2018 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package cloud.orbit.actors.cluster.membership;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cloud.orbit.actors.cluster.heartbeat.RedisClusterHeartBeat;
+import cloud.orbit.actors.cluster.impl.RedisConnectionManager;
+import cloud.orbit.actors.cluster.impl.RedisKeyGenerator;
+import io.lettuce.core.pubsub.RedisPubSubAdapter;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * The <code>RedisBroadcastMembershipBackend</code> publishes every heartbeat to the cluster channel, which every node
+ * subscribes to.
+ */
+public class RedisBroadcastMembershipBackend implements RedisMembershipBackend
+{
+    private static Logger logger = LoggerFactory.getLogger(RedisBroadcastMembershipBackend.class);
+
+    private final RedisConnectionManager redisConnectionManager;
+    private final String clusterChannelKey;
+
+    public RedisBroadcastMembershipBackend(final String clusterName, final RedisConnectionManager redisConnectionManager)
+    {
+        this.redisConnectionManager = redisConnectionManager;
+        this.clusterChannelKey = RedisKeyGenerator.clusterKey(clusterName);
+    }
+
+    @Override
+    public void start(final Consumer<RedisClusterHeartBeat> heartBeatReceiver)
+    {
+        logger.info("Joining topic '{}'", clusterChannelKey);
+        redisConnectionManager.subscribeToControlChannel(clusterChannelKey, heartBeatListener(heartBeatReceiver));
+    }
+
+    @Override
+    public CompletableFuture<?> publish(final RedisClusterHeartBeat heartBeat)
+    {
+        return redisConnectionManager.sendMessageToControlChannel(clusterChannelKey, heartBeat);
+    }
+
+    static RedisPubSubAdapter<String, Object> heartBeatListener(final Consumer<RedisClusterHeartBeat> heartBeatReceiver)
+    {
+        return new RedisPubSubAdapter<String, Object>()
+        {
+            @Override
+            public void message(final String channel, final Object redisMsg)
+            {
+                if ( redisMsg instanceof RedisClusterHeartBeat )
+                {
+                    heartBeatReceiver.accept((RedisClusterHeartBeat) redisMsg);
+                }
+            }
+        };
+    }
+}
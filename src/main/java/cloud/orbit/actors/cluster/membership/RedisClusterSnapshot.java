@@ -0,0 +1,185 @@
+/*
+ Copyright (C) 2018 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package cloud.orbit.actors.cluster.membership;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cloud.orbit.actors.NodeState;
+import cloud.orbit.actors.NodeType;
+import cloud.orbit.actors.cluster.RedisClusterConfig;
+import cloud.orbit.actors.cluster.heartbeat.RedisClusterHeartBeat;
+import cloud.orbit.actors.cluster.heartbeat.RedisClusterHeartBeatCodec;
+import cloud.orbit.actors.cluster.impl.RedisConnectionManager;
+import cloud.orbit.actors.cluster.impl.RedisKeyGenerator;
+import cloud.orbit.actors.cluster.impl.lettuce.LettuceClient;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * The <code>RedisClusterSnapshot</code> keeps the latest full heartbeat of every running SERVER node in a hash in the
+ * node directory, so that a joining node can preload its tracker from it instead of waiting to hear from every peer.
+ *
+ * A server rewrites its entry when what its heartbeat says changes, and otherwise every
+ * <code>foreignNodeDeathTimeoutMillis / 2</code>; it deletes its entry once it stops running. Each entry is the time it
+ * was written followed by the heartbeat in its compact wire format. Readers skip entries older than
+ * <code>foreignNodeDeathTimeoutMillis</code>, and delete those older than <code>deadNodeCullingDelayMillis</code>.
+ * Entries are handed out with their age, so that a node that crashed shortly before is presumed dead on time rather
+ * than a full death timeout after we read its entry.
+ */
+public class RedisClusterSnapshot
+{
+    private static Logger logger = LoggerFactory.getLogger(RedisClusterSnapshot.class);
+
+    private final String localNodeId;
+    private final RedisConnectionManager redisConnectionManager;
+    private final RedisClusterConfig config;
+    private final String snapshotKey;
+
+    // guarded by this
+    private boolean written = false;
+    private long lastWrittenDigest;
+    private long lastWrittenAtMillis;
+
+    public RedisClusterSnapshot(final String clusterName, final String localNodeId, final RedisConnectionManager redisConnectionManager, final RedisClusterConfig config)
+    {
+        this.localNodeId = localNodeId;
+        this.redisConnectionManager = redisConnectionManager;
+        this.config = config;
+        this.snapshotKey = RedisKeyGenerator.clusterSnapshotKey(clusterName);
+    }
+
+    /**
+     * Updates the local node's entry from a heartbeat we just sent, if it needs it.
+     */
+    public synchronized void write(final RedisClusterHeartBeat heartBeat)
+    {
+        final boolean eligible = heartBeat.getNodeType() == NodeType.SERVER && heartBeat.getNodeState() == NodeState.RUNNING;
+        if ( ! eligible )
+        {
+            if ( written )
+            {
+                written = false;
+                client().commands().hdel(snapshotKey, localNodeId).toCompletableFuture().exceptionally(e ->
+                {
+                    logger.error("Failed to remove '{}' from the cluster snapshot", localNodeId, e);
+                    return null;
+                });
+            }
+            return;
+        }
+
+        // Deltas can't stand on their own; wait for the next full snapshot.
+        if ( ! heartBeat.isFullSnapshot() )
+        {
+            return;
+        }
+
+        final long now = System.currentTimeMillis();
+        final long digest = heartBeat.getViewDigest() * 31 + RedisGossipMembershipBackend.announcement(heartBeat);
+        if ( written && digest == lastWrittenDigest && now - lastWrittenAtMillis < config.getForeignNodeDeathTimeoutMillis() / 2 )
+        {
+            return;
+        }
+
+        written = true;
+        lastWrittenDigest = digest;
+        lastWrittenAtMillis = now;
+        client().commands().hset(snapshotKey, localNodeId, encodeEntry(heartBeat, now)).toCompletableFuture().exceptionally(e ->
+        {
+            logger.error("Failed to write '{}' to the cluster snapshot", localNodeId, e);
+            synchronized (this)
+            {
+                written = false;
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Reads the heartbeats of the servers that were running recently (waiting up to the general timeout), giving each
+     * to <code>receiver</code> with its age in milliseconds; gives nothing if the snapshot couldn't be read.
+     */
+    public void read(final ObjLongConsumer<RedisClusterHeartBeat> receiver)
+    {
+        final Map<String, Object> entries;
+        try
+        {
+            entries = client().commands().hgetall(snapshotKey).get(config.getGeneralTimeout(), TimeUnit.MILLISECONDS);
+        }
+        catch (Exception e)
+        {
+            logger.warn("Failed to read the cluster snapshot; waiting for heartbeats instead", e);
+            return;
+        }
+
+        final long now = System.currentTimeMillis();
+        for ( final Map.Entry<String, Object> entry : entries.entrySet() )
+        {
+            if ( ! (entry.getValue() instanceof byte[]) || entry.getKey().equals(localNodeId) )
+            {
+                continue;
+            }
+            final ByteBuffer bytes = ByteBuffer.wrap((byte[]) entry.getValue());
+            // Clocks differ between nodes; an entry from the future is as fresh as it gets.
+            final long age = Math.max(now - bytes.getLong(), 0);
+            if ( age < config.getForeignNodeDeathTimeoutMillis() )
+            {
+                receiver.accept(RedisClusterHeartBeatCodec.decode(bytes), age);
+            }
+            else if ( age > config.getDeadNodeCullingDelayMillis() )
+            {
+                client().commands().hdel(snapshotKey, entry.getKey()).toCompletableFuture().exceptionally(e ->
+                {
+                    logger.warn("Failed to remove '{}' from the cluster snapshot", entry.getKey(), e);
+                    return null;
+                });
+            }
+        }
+    }
+
+    private LettuceClient<String, Object> client()
+    {
+        return redisConnectionManager.getShardedNodeDirectoryClient(snapshotKey);
+    }
+
+    static byte[] encodeEntry(final RedisClusterHeartBeat heartBeat, final long writtenAtMillis)
+    {
+        final ByteBuf buffer = Unpooled.buffer(Long.BYTES + RedisClusterHeartBeatCodec.estimateSize(heartBeat));
+        buffer.writeLong(writtenAtMillis);
+        RedisClusterHeartBeatCodec.encode(heartBeat, buffer);
+        return ByteBufUtil.getBytes(buffer);
+    }
+}
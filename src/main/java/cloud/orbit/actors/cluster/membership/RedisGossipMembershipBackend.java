@@ -0,0 +1,395 @@
+/*
+ Copyright (C) 2018 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package cloud.orbit.actors.cluster.membership;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cloud.orbit.actors.NodeState;
+import cloud.orbit.actors.cluster.NodeAddress;
+import cloud.orbit.actors.cluster.NodeAddressImpl;
+import cloud.orbit.actors.cluster.RedisClusterConfig;
+import cloud.orbit.actors.cluster.heartbeat.RedisClusterHeartBeat;
+import cloud.orbit.actors.cluster.heartbeat.RedisClusterNodeView;
+import cloud.orbit.actors.cluster.impl.RedisConnectionManager;
+import cloud.orbit.actors.cluster.impl.RedisKeyGenerator;
+import cloud.orbit.actors.cluster.impl.lettuce.LettuceClient;
+import cloud.orbit.actors.cluster.state.RedisClusterNodeTracker;
+import cloud.orbit.actors.cluster.state.RedisClusterTracker;
+import io.lettuce.core.pubsub.RedisPubSubAdapter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * The <code>RedisGossipMembershipBackend</code> sends each heartbeat to a few random peers' gossip channels rather
+ * than to the whole cluster, so that membership traffic grows linearly rather than quadratically with cluster size.
+ * Nothing is ever published to the cluster channel.
+ *
+ * Heartbeats are always full snapshots, and receivers treat the sequence numbers in a heartbeat's node views as signs
+ * of life of those nodes (see <code>RedisClusterTracker</code>), so liveness spreads epidemically. Each node also
+ * records itself in a members hash in the node directory, which is how a joining node finds its first peers.
+ *
+ * While a node isn't in the cluster, or right after its own type, state or interfaces change, it sends its heartbeat
+ * directly to every member it knows of. A node that hears of such a change gossips to the changed node next, so that
+ * it quickly learns that the cluster agrees, and a node that sees an unknown node in a heartbeat's views introduces
+ * itself to it. Every <code>gossipAntiEntropyInterval</code>th heartbeat, a node also sends a membership digest to one
+ * random peer; if their digests differ, the two exchange heartbeats to repair anything the gossip missed.
+ */
+public class RedisGossipMembershipBackend implements RedisMembershipBackend
+{
+    private static Logger logger = LoggerFactory.getLogger(RedisGossipMembershipBackend.class);
+
+    private final String clusterName;
+    private final NodeAddress localAddress;
+    private final String localNodeId;
+    private final RedisConnectionManager redisConnectionManager;
+    private final RedisClusterTracker clusterTracker;
+    private final RedisClusterConfig config;
+    private final String membersKey;
+    private final int fanout;
+    private final int antiEntropyInterval;
+
+    // what we last heard each node announce about itself; a difference marks the node as changed
+    private final ConcurrentMap<NodeAddress, Long> announcements = new ConcurrentHashMap<>();
+    private final Set<NodeAddress> changedNodes = ConcurrentHashMap.newKeySet();
+
+    // members read from the members hash that we may not have heard from yet
+    private final Set<NodeAddress> discoveredMembers = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean readingMembers = new AtomicBoolean(false);
+
+    private volatile RedisClusterHeartBeat lastHeartBeat;
+
+    // guarded by this
+    private long lastPublishedAnnouncement;
+    private int heartBeatsSinceAntiEntropy = 0;
+    private long memberEntryWrittenAtMillis = Long.MIN_VALUE;
+
+    public RedisGossipMembershipBackend(
+            final String clusterName,
+            final NodeAddress localAddress,
+            final RedisConnectionManager redisConnectionManager,
+            final RedisClusterTracker clusterTracker,
+            final RedisClusterConfig config)
+    {
+        this.clusterName = clusterName;
+        this.localAddress = localAddress;
+        this.localNodeId = localAddress.asUUID().toString();
+        this.redisConnectionManager = redisConnectionManager;
+        this.clusterTracker = clusterTracker;
+        this.config = config;
+        this.membersKey = RedisKeyGenerator.gossipMembersKey(clusterName);
+        this.fanout = Math.max(config.getGossipFanout(), 1);
+        this.antiEntropyInterval = Math.max(config.getGossipAntiEntropyInterval(), 1);
+    }
+
+    @Override
+    public void start(final Consumer<RedisClusterHeartBeat> heartBeatReceiver)
+    {
+        final RedisPubSubAdapter<String, Object> listener = new RedisPubSubAdapter<String, Object>()
+        {
+            @Override
+            public void message(final String channel, final Object redisMsg)
+            {
+                if ( redisMsg instanceof RedisClusterHeartBeat )
+                {
+                    receiveHeartBeat((RedisClusterHeartBeat) redisMsg, heartBeatReceiver);
+                }
+                else if ( redisMsg instanceof RedisGossipDigest )
+                {
+                    receiveDigest((RedisGossipDigest) redisMsg);
+                }
+            }
+        };
+
+        logger.info("Joining topic '{}' (gossip)", gossipKey(localAddress));
+        redisConnectionManager.subscribeToControlChannel(gossipKey(localAddress), listener);
+        readMembers();
+    }
+
+    private void receiveHeartBeat(final RedisClusterHeartBeat heartBeat, final Consumer<RedisClusterHeartBeat> heartBeatReceiver)
+    {
+        final long announcement = announcement(heartBeat);
+        final Long previous = announcements.put(heartBeat.getNodeAddress(), announcement);
+        if ( previous == null || previous != announcement )
+        {
+            changedNodes.add(heartBeat.getNodeAddress());
+        }
+
+        // Introduce ourselves to running nodes we've only heard of second-hand.
+        for ( final RedisClusterNodeView view : heartBeat.getNodeViews().values() )
+        {
+            if ( view.getNodeState() == NodeState.RUNNING && ! clusterTracker.getNodeTrackers().containsKey(view.getNodeAddress()) )
+            {
+                changedNodes.add(view.getNodeAddress());
+            }
+        }
+        heartBeatReceiver.accept(heartBeat);
+    }
+
+    private void receiveDigest(final RedisGossipDigest digest)
+    {
+        if ( digest.getMembershipDigest() == membershipDigest() )
+        {
+            return;
+        }
+
+        // We disagree: send the sender our heartbeat, and ask for theirs unless this already was their answer.
+        final NodeAddress sender = new NodeAddressImpl(digest.getSenderAddress());
+        final RedisClusterHeartBeat heartBeat = lastHeartBeat;
+        if ( heartBeat != null )
+        {
+            redisConnectionManager.sendMessageToControlChannel(gossipKey(sender), heartBeat);
+        }
+        if ( ! digest.isReply() )
+        {
+            redisConnectionManager.sendMessageToControlChannel(gossipKey(sender),
+                    new RedisGossipDigest(localAddress.asUUID(), membershipDigest(), true));
+        }
+    }
+
+    @Override
+    public synchronized CompletableFuture<?> publish(final RedisClusterHeartBeat heartBeat)
+    {
+        lastHeartBeat = heartBeat;
+        writeMemberEntry();
+
+        final long announcement = announcement(heartBeat);
+        final boolean introduce = announcement != lastPublishedAnnouncement || ! clusterTracker.isLocalNodeInCluster();
+        lastPublishedAnnouncement = announcement;
+        announcements.keySet().retainAll(clusterTracker.getNodeTrackers().keySet());
+
+        final Set<NodeAddress> targets;
+        if ( introduce )
+        {
+            readMembers();
+            targets = allMembers();
+            changedNodes.clear();
+        }
+        else
+        {
+            targets = selectTargets();
+        }
+
+        // We always hear our own heartbeats, which is how we notice that we've lost our connection.
+        final List<CompletableFuture<Long>> sends = new ArrayList<>();
+        sends.add(redisConnectionManager.sendMessageToControlChannel(gossipKey(localAddress), heartBeat));
+        for ( final NodeAddress target : targets )
+        {
+            sends.add(redisConnectionManager.sendMessageToControlChannel(gossipKey(target), heartBeat));
+        }
+
+        if ( ++heartBeatsSinceAntiEntropy >= antiEntropyInterval )
+        {
+            heartBeatsSinceAntiEntropy = 0;
+            final List<NodeAddress> peers = runningPeers(Collections.emptySet());
+            if ( ! peers.isEmpty() )
+            {
+                final NodeAddress peer = peers.get(ThreadLocalRandom.current().nextInt(peers.size()));
+                sends.add(redisConnectionManager.sendMessageToControlChannel(gossipKey(peer),
+                        new RedisGossipDigest(localAddress.asUUID(), membershipDigest(), false)));
+            }
+        }
+        return CompletableFuture.allOf(sends.toArray(new CompletableFuture[sends.size()]));
+    }
+
+    @Override
+    public void shutdown()
+    {
+        client().commands().hdel(membersKey, localNodeId).toCompletableFuture().exceptionally(e ->
+        {
+            logger.warn("Failed to remove '{}' from the gossip members", localNodeId, e);
+            return null;
+        });
+    }
+
+    /**
+     * Returns the changed nodes, followed by random running peers until the fanout is reached.
+     */
+    private Set<NodeAddress> selectTargets()
+    {
+        final Set<NodeAddress> targets = new LinkedHashSet<>();
+        for ( final NodeAddress changedNode : changedNodes )
+        {
+            changedNodes.remove(changedNode);
+            targets.add(changedNode);
+        }
+
+        final List<NodeAddress> candidates = runningPeers(targets);
+
+        // Partial Fisher-Yates shuffle: only as many swaps as we need targets.
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        for ( int i = 0; i < candidates.size() && i < fanout; i++ )
+        {
+            final int j = i + random.nextInt(candidates.size() - i);
+            final NodeAddress candidate = candidates.get(j);
+            candidates.set(j, candidates.get(i));
+            targets.add(candidate);
+        }
+        targets.remove(localAddress);
+        return targets;
+    }
+
+    private List<NodeAddress> runningPeers(final Set<NodeAddress> excluded)
+    {
+        final List<NodeAddress> peers = new ArrayList<>();
+        for ( final RedisClusterNodeTracker tracker : clusterTracker.getNodeTrackers().values() )
+        {
+            if ( tracker.getNodeState() == NodeState.RUNNING && ! excluded.contains(tracker.getNodeAddress()) )
+            {
+                peers.add(tracker.getNodeAddress());
+            }
+        }
+        peers.remove(localAddress);
+        return peers;
+    }
+
+    private Set<NodeAddress> allMembers()
+    {
+        final Set<NodeAddress> members = new LinkedHashSet<>(discoveredMembers);
+        members.addAll(runningPeers(Collections.emptySet()));
+        members.remove(localAddress);
+        return members;
+    }
+
+    /**
+     * Condenses the membership we believe in into a number that doesn't depend on iteration order.
+     */
+    private long membershipDigest()
+    {
+        long digest = 0;
+        for ( final RedisClusterNodeTracker tracker : clusterTracker.getNodeTrackers().values() )
+        {
+            if ( tracker.getNodeState() == NodeState.RUNNING )
+            {
+                digest += Objects.hash(tracker.getNodeAddress(), tracker.getNodeType(), tracker.getHostableActorInterfaces()) * 0x9E3779B97F4A7C15L;
+            }
+        }
+        return digest;
+    }
+
+    /**
+     * Rewrites our entry in the members hash every <code>deadNodeCullingDelayMillis / 2</code>.
+     */
+    private void writeMemberEntry()
+    {
+        final long now = System.currentTimeMillis();
+        if ( memberEntryWrittenAtMillis != Long.MIN_VALUE && now - memberEntryWrittenAtMillis < config.getDeadNodeCullingDelayMillis() / 2 )
+        {
+            return;
+        }
+        memberEntryWrittenAtMillis = now;
+        client().commands().hset(membersKey, localNodeId, now).toCompletableFuture().exceptionally(e ->
+        {
+            logger.error("Failed to write '{}' to the gossip members", localNodeId, e);
+            synchronized (this)
+            {
+                memberEntryWrittenAtMillis = Long.MIN_VALUE;
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Reads the members hash in the background, unless a read is already running. Entries that haven't been rewritten
+     * for <code>deadNodeCullingDelayMillis</code> belong to dead nodes and are deleted.
+     */
+    private void readMembers()
+    {
+        if ( ! readingMembers.compareAndSet(false, true) )
+        {
+            return;
+        }
+        client().commands().hgetall(membersKey).toCompletableFuture().whenComplete((entries, e) ->
+        {
+            readingMembers.set(false);
+            if ( e != null )
+            {
+                logger.warn("Failed to read the gossip members", e);
+                return;
+            }
+            final long now = System.currentTimeMillis();
+            for ( final Map.Entry<String, Object> entry : entries.entrySet() )
+            {
+                if ( entry.getKey().equals(localNodeId) || ! (entry.getValue() instanceof Long) )
+                {
+                    continue;
+                }
+                final NodeAddress member = new NodeAddressImpl(UUID.fromString(entry.getKey()));
+                if ( now - (Long) entry.getValue() < config.getDeadNodeCullingDelayMillis() )
+                {
+                    discoveredMembers.add(member);
+                }
+                else
+                {
+                    discoveredMembers.remove(member);
+                    client().commands().hdel(membersKey, entry.getKey()).toCompletableFuture().exceptionally(ex ->
+                    {
+                        logger.warn("Failed to remove '{}' from the gossip members", entry.getKey(), ex);
+                        return null;
+                    });
+                }
+            }
+        });
+    }
+
+    private LettuceClient<String, Object> client()
+    {
+        return redisConnectionManager.getShardedNodeDirectoryClient(membersKey);
+    }
+
+    private String gossipKey(final NodeAddress nodeAddress)
+    {
+        return RedisKeyGenerator.gossipKey(clusterName, nodeAddress.toString());
+    }
+
+    /**
+     * Condenses what a node says about itself (rather than about others) into a number that changes when it does.
+     */
+    static long announcement(final RedisClusterHeartBeat heartBeat)
+    {
+        long h = heartBeat.getHostableInterfacesHash();
+        h = h * 31 + (heartBeat.getNodeType() == null ? -1 : heartBeat.getNodeType().ordinal());
+        h = h * 31 + (heartBeat.getNodeState() == null ? -1 : heartBeat.getNodeState().ordinal());
+        h = h * 31 + Objects.hashCode(heartBeat.getPlacementGroup());
+        return h;
+    }
+}
@@ -0,0 +1,310 @@
+/*
+ Copyright (C) 2018 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package cloud.orbit.actors.cluster.membership;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cloud.orbit.actors.cluster.NodeAddress;
+import cloud.orbit.actors.cluster.NodeAddressImpl;
+import cloud.orbit.actors.cluster.RedisClusterConfig;
+import cloud.orbit.actors.cluster.heartbeat.RedisClusterHeartBeat;
+import cloud.orbit.actors.cluster.impl.RedisConnectionManager;
+import cloud.orbit.actors.cluster.impl.RedisKeyGenerator;
+import cloud.orbit.actors.cluster.impl.lettuce.LettuceClient;
+import cloud.orbit.actors.cluster.state.RedisClusterTracker;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * The <code>RedisLeaseMembershipBackend</code> keeps each node's latest heartbeat in a lease key in the node directory,
+ * expiring after <code>foreignNodeDeathTimeoutMillis</code>.
+ *
+ * Every pulse renews the lease (PEXPIRE), and the heartbeat is only rewritten (SET PX) when what it says changes, so
+ * that a quiet cluster costs one small write per node per pulse. Peers follow rewrites, expiries and deletions through
+ * keyspace notifications, fetching a lease only when it was rewritten; a node whose lease expires is presumed dead.
+ * Since notifications are fire-and-forget, the set of leases is re-read with SCAN every
+ * <code>leaseReconcileInterval</code> pulses (and every pulse while we wait for the cluster to agree with us).
+ *
+ * Notifications are received by pattern-subscribing to the keyspace channels of the lease keys only, in the database
+ * the leases are written to (0 unless <code>selectUriDatabase</code> is on). Redis still generates a notification for every write of an enabled event class to
+ * any key, though, and enabling them is server-wide: on a server shared with the actor directory (or anything else),
+ * every SET then costs the server a notification, even if nobody receives it. That's why operators enable
+ * <code>notify-keyspace-events</code> themselves (<code>leaseConfigureKeyspaceNotifications</code> is off by default);
+ * prefer a dedicated node directory.
+ * If the generic event class is enabled by someone else, every renewal is also delivered to every node as an
+ * "expire" notification, which is ignored.
+ *
+ * A node hears its own heartbeat when Redis acknowledges the renewal, which is how it notices a lost connection.
+ */
+public class RedisLeaseMembershipBackend implements RedisMembershipBackend
+{
+    private static Logger logger = LoggerFactory.getLogger(RedisLeaseMembershipBackend.class);
+
+    private static final String KEYSPACE_NOTIFICATION_FLAGS = "K$x"; // keyspace channels for string and expired events
+
+    private final NodeAddress localAddress;
+    private final RedisConnectionManager redisConnectionManager;
+    private final RedisClusterTracker clusterTracker;
+    private final RedisClusterConfig config;
+    private final String leaseKey;
+    private final String leaseKeyPrefix;
+    private final long leaseTimeToLiveMillis;
+
+    private volatile Consumer<RedisClusterHeartBeat> heartBeatReceiver;
+    private volatile boolean leaseWritten = false;
+
+    // guarded by this
+    private long lastWrittenDigest;
+    private int pulsesSinceReconcile = 0;
+
+    public RedisLeaseMembershipBackend(
+            final String clusterName,
+            final NodeAddress localAddress,
+            final RedisConnectionManager redisConnectionManager,
+            final RedisClusterTracker clusterTracker,
+            final RedisClusterConfig config)
+    {
+        this.localAddress = localAddress;
+        this.redisConnectionManager = redisConnectionManager;
+        this.clusterTracker = clusterTracker;
+        this.config = config;
+        this.leaseKey = RedisKeyGenerator.leaseKey(clusterName, localAddress.asUUID().toString());
+        this.leaseKeyPrefix = RedisKeyGenerator.leaseKey(clusterName, "");
+        this.leaseTimeToLiveMillis = config.getForeignNodeDeathTimeoutMillis();
+    }
+
+    @Override
+    public void start(final Consumer<RedisClusterHeartBeat> heartBeatReceiver)
+    {
+        this.heartBeatReceiver = heartBeatReceiver;
+        if ( config.getLeaseConfigureKeyspaceNotifications() )
+        {
+            configureKeyspaceNotifications();
+        }
+
+        redisConnectionManager.subscribeToNodeDirectoryKeyspace(leaseKeyPrefix, (key, event) -> receiveKeyEvent(event, key));
+
+        // Learn about the nodes that are already there before we announce ourselves.
+        try
+        {
+            reconcile(true).get(config.getGeneralTimeout(), TimeUnit.MILLISECONDS);
+        }
+        catch (Exception e)
+        {
+            logger.warn("Failed to read the existing leases; relying on later reconciliation", e);
+        }
+    }
+
+    @Override
+    public synchronized CompletableFuture<?> publish(final RedisClusterHeartBeat heartBeat)
+    {
+        final LettuceClient<String, Object> client = redisConnectionManager.getShardedNodeDirectoryClient(leaseKey);
+        final long digest = heartBeat.getViewDigest() * 31 + RedisGossipMembershipBackend.announcement(heartBeat);
+
+        final CompletableFuture<Boolean> written;
+        if ( ! leaseWritten || digest != lastWrittenDigest )
+        {
+            leaseWritten = true;
+            lastWrittenDigest = digest;
+            written = writeLease(client, heartBeat);
+        }
+        else
+        {
+            // If the lease is gone, the cluster has presumed us dead; rewriting it brings us back.
+            written = client.commands().pexpire(leaseKey, leaseTimeToLiveMillis).toCompletableFuture()
+                    .thenCompose(renewed -> renewed ? CompletableFuture.completedFuture(true) : writeLease(client, heartBeat));
+        }
+
+        final CompletableFuture<Boolean> result = written.whenComplete((ok, e) ->
+        {
+            if ( Boolean.TRUE.equals(ok) )
+            {
+                heartBeatReceiver.accept(heartBeat);
+            }
+            else
+            {
+                logger.error("Failed to renew lease '{}'", leaseKey, e);
+                leaseWritten = false;
+            }
+        });
+
+        final boolean agreed = clusterTracker.isLocalNodeInClusterAs(clusterTracker.getNodeType());
+        if ( ++pulsesSinceReconcile >= config.getLeaseReconcileInterval() || ! agreed )
+        {
+            pulsesSinceReconcile = 0;
+            reconcile(! agreed);
+        }
+        return result;
+    }
+
+    private CompletableFuture<Boolean> writeLease(final LettuceClient<String, Object> client, final RedisClusterHeartBeat heartBeat)
+    {
+        return client.set(leaseKey, heartBeat, leaseTimeToLiveMillis).thenApply("OK"::equals);
+    }
+
+    private void receiveKeyEvent(final String event, final String key)
+    {
+        final NodeAddress nodeAddress = parseLeaseKey(leaseKeyPrefix, key);
+        if ( nodeAddress == null || nodeAddress.equals(localAddress) )
+        {
+            return;
+        }
+
+        if ( "set".equals(event) )
+        {
+            fetchLease(key);
+        }
+        else if ( "expired".equals(event) || "del".equals(event) )
+        {
+            clusterTracker.expireLease(nodeAddress);
+        }
+    }
+
+    private CompletableFuture<Void> fetchLease(final String key)
+    {
+        return redisConnectionManager.getShardedNodeDirectoryClient(key).get(key).handle((lease, e) ->
+        {
+            if ( e != null )
+            {
+                logger.error("Failed to fetch lease '{}'", key, e);
+            }
+            else if ( lease instanceof RedisClusterHeartBeat )
+            {
+                heartBeatReceiver.accept((RedisClusterHeartBeat) lease);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Re-reads the set of leases, fetching those of nodes we don't know yet (or all of them when
+     * <code>fetchAll</code>), and expiring running nodes that no longer hold one.
+     */
+    private CompletableFuture<Void> reconcile(final boolean fetchAll)
+    {
+        final long readNanos = System.nanoTime();
+        final List<CompletableFuture<List<String>>> scans = redisConnectionManager.getNodeDirectoryClients().stream()
+                .map(client -> client.scan(leaseKeyPrefix + "*"))
+                .collect(Collectors.toList());
+
+        return CompletableFuture.allOf(scans.toArray(new CompletableFuture[scans.size()]))
+                .thenCompose(v ->
+                {
+                    final Map<NodeAddress, String> leases = new HashMap<>();
+                    for ( final CompletableFuture<List<String>> scan : scans )
+                    {
+                        for ( final String key : scan.join() )
+                        {
+                            final NodeAddress nodeAddress = parseLeaseKey(leaseKeyPrefix, key);
+                            if ( nodeAddress != null )
+                            {
+                                leases.put(nodeAddress, key);
+                            }
+                        }
+                    }
+                    clusterTracker.receiveLeaseHolders(leases.keySet(), readNanos);
+
+                    final List<CompletableFuture<Void>> fetches = leases.entrySet().stream()
+                            .filter(lease -> ! lease.getKey().equals(localAddress))
+                            .filter(lease -> fetchAll || ! clusterTracker.getNodeTrackers().containsKey(lease.getKey()))
+                            .map(lease -> fetchLease(lease.getValue()))
+                            .collect(Collectors.toList());
+                    return CompletableFuture.allOf(fetches.toArray(new CompletableFuture[fetches.size()]));
+                })
+                .exceptionally(e ->
+                {
+                    logger.error("Failed to reconcile leases", e);
+                    return null;
+                });
+    }
+
+    private void configureKeyspaceNotifications()
+    {
+        for ( final LettuceClient<String, Object> client : redisConnectionManager.getNodeDirectoryClients() )
+        {
+            try
+            {
+                final Map<String, String> current = client.commands().configGet("notify-keyspace-events")
+                        .get(config.getGeneralTimeout(), TimeUnit.MILLISECONDS);
+                final String currentFlags = current.getOrDefault("notify-keyspace-events", "");
+                final String flags = mergeKeyspaceNotificationFlags(currentFlags);
+                if ( ! flags.equals(currentFlags) )
+                {
+                    client.commands().configSet("notify-keyspace-events", flags).get(config.getGeneralTimeout(), TimeUnit.MILLISECONDS);
+                }
+            }
+            catch (Exception e)
+            {
+                logger.warn("Could not enable keyspace notifications on '{}'; peers will only be noticed by reconciliation", client.getRedisUri(), e);
+            }
+        }
+    }
+
+    /**
+     * Adds the keyspace notification flags we need to the server's current ones, without dropping any.
+     */
+    static String mergeKeyspaceNotificationFlags(final String currentFlags)
+    {
+        final StringBuilder flags = new StringBuilder(currentFlags);
+        for ( final char flag : KEYSPACE_NOTIFICATION_FLAGS.toCharArray() )
+        {
+            // "A" is an alias for all the event classes, but not for the keyspace/keyevent channel selectors.
+            final boolean present = flags.indexOf(String.valueOf(flag)) >= 0 || (flag != 'K' && flags.indexOf("A") >= 0);
+            if ( ! present )
+            {
+                flags.append(flag);
+            }
+        }
+        return flags.toString();
+    }
+
+    static NodeAddress parseLeaseKey(final String leaseKeyPrefix, final String key)
+    {
+        if ( ! key.startsWith(leaseKeyPrefix) )
+        {
+            return null;
+        }
+        try
+        {
+            return new NodeAddressImpl(UUID.fromString(key.substring(leaseKeyPrefix.length())));
+        }
+        catch (IllegalArgumentException e)
+        {
+            return null;
+        }
+    }
+}
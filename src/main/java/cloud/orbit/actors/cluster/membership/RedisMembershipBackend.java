@@ -0,0 +1,59 @@
+/*
+ Copyright (C) 2018 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package cloud.orbit.actors.cluster.membership;
+
+import cloud.orbit.actors.cluster.heartbeat.RedisClusterHeartBeat;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * A <code>RedisMembershipBackend</code> decides how heartbeats travel between nodes. Whatever the transport, every
+ * node must eventually receive heartbeats from every other node (and its own, which is how a node notices that it has
+ * lost its connection), so that each <code>RedisClusterTracker</code> converges on the same cluster view.
+ */
+public interface RedisMembershipBackend
+{
+    /**
+     * Starts delivering received heartbeats to <code>heartBeatReceiver</code>; returns once heartbeats can be received.
+     */
+    void start(Consumer<RedisClusterHeartBeat> heartBeatReceiver);
+
+    /**
+     * Sends the local node's heartbeat.
+     */
+    CompletableFuture<?> publish(RedisClusterHeartBeat heartBeat);
+
+    /**
+     * Releases what the backend holds once the local node has stopped; called before the connections are shut down.
+     */
+    default void shutdown()
+    {
+    }
+}
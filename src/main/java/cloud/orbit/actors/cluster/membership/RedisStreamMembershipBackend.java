@@ -0,0 +1,372 @@
+/*
+ Copyright (C) 2018 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package cloud.orbit.actors.cluster.membership;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cloud.orbit.actors.NodeState;
+import cloud.orbit.actors.cluster.NodeAddress;
+import cloud.orbit.actors.cluster.NodeAddressImpl;
+import cloud.orbit.actors.cluster.RedisClusterConfig;
+import cloud.orbit.actors.cluster.heartbeat.RedisClusterHeartBeat;
+import cloud.orbit.actors.cluster.impl.RedisConnectionManager;
+import cloud.orbit.actors.cluster.impl.RedisKeyGenerator;
+import cloud.orbit.actors.cluster.impl.lettuce.LettuceClient;
+import cloud.orbit.actors.cluster.impl.lettuce.RedisStreamEntry;
+import cloud.orbit.actors.cluster.state.RedisClusterTracker;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * The <code>RedisStreamMembershipBackend</code> keeps the cluster's membership as an event log: heartbeats that change
+ * something (a node joining, changing type or state, or seeing a new view) are appended to a Redis Stream per cluster,
+ * trimmed to about <code>streamMaxLength</code> entries, after being written to a snapshot hash of each node's latest
+ * heartbeat. Since the snapshot is always written first, a joining node that notes the stream's last id and then reads
+ * the snapshot has the whole cluster state as of that id, and tails the stream from there with XREAD BLOCK on a
+ * dedicated connection without missing a transition.
+ *
+ * Liveness doesn't go through the stream: every pulse, each node pushes its deadline in a sorted set
+ * <code>foreignNodeDeathTimeoutMillis</code> into the future. Deadlines are set and compared by scripts on the Redis
+ * server's clock, so clock skew between nodes can't expire a healthy peer. Nodes take turns removing the members whose
+ * deadline has passed: each sweeps at a random interval averaging <code>streamSweepIntervalMillis</code> times the
+ * number of running nodes, so the cluster as a whole sweeps about once per <code>streamSweepIntervalMillis</code>. The
+ * node that removes one deletes its snapshot entry and appends its expiry to the stream. A node that finds itself
+ * expired (its deadline was missing, or it reads its own expiry) appends its heartbeat again.
+ *
+ * A node hears its own heartbeat when Redis acknowledges the pulse, which is how it notices a lost connection.
+ */
+public class RedisStreamMembershipBackend implements RedisMembershipBackend
+{
+    private static Logger logger = LoggerFactory.getLogger(RedisStreamMembershipBackend.class);
+
+    static final String HEARTBEAT_FIELD = "heartBeat";
+    static final String EXPIRED_FIELD = "expired";
+    private static final long READ_COUNT = 1_000;
+
+    private final String clusterName;
+    private final NodeAddress localAddress;
+    private final String localNodeId;
+    private final RedisConnectionManager redisConnectionManager;
+    private final RedisClusterTracker clusterTracker;
+    private final RedisClusterConfig config;
+    private final String streamKey;
+    private final String snapshotKey;
+    private final String livenessKey;
+    private final long livenessTimeToLiveMillis;
+    private final long blockMillis;
+
+    private volatile Consumer<RedisClusterHeartBeat> heartBeatReceiver;
+    private volatile boolean running = false;
+    private volatile LettuceClient<String, Object> tailClient;
+    private Thread tailThread;
+
+    // guarded by this
+    private boolean appended = false;
+    private long lastAppendedDigest;
+    private long nextSweepNanos = System.nanoTime();
+
+    public RedisStreamMembershipBackend(
+            final String clusterName,
+            final NodeAddress localAddress,
+            final RedisConnectionManager redisConnectionManager,
+            final RedisClusterTracker clusterTracker,
+            final RedisClusterConfig config)
+    {
+        this.clusterName = clusterName;
+        this.localAddress = localAddress;
+        this.localNodeId = localAddress.asUUID().toString();
+        this.redisConnectionManager = redisConnectionManager;
+        this.clusterTracker = clusterTracker;
+        this.config = config;
+        this.streamKey = RedisKeyGenerator.membershipStreamKey(clusterName);
+        this.snapshotKey = RedisKeyGenerator.membershipSnapshotKey(clusterName);
+        this.livenessKey = RedisKeyGenerator.membershipLivenessKey(clusterName);
+        this.livenessTimeToLiveMillis = config.getForeignNodeDeathTimeoutMillis();
+        this.blockMillis = config.getGeneralTimeout();
+    }
+
+    @Override
+    public void start(final Consumer<RedisClusterHeartBeat> heartBeatReceiver)
+    {
+        this.heartBeatReceiver = heartBeatReceiver;
+
+        // Learn about the nodes that are already there before we announce ourselves.
+        String offset = "$";
+        try
+        {
+            offset = readSnapshot().get(config.getGeneralTimeout(), TimeUnit.MILLISECONDS);
+        }
+        catch (Exception e)
+        {
+            logger.warn("Failed to read the membership snapshot; only following new membership events", e);
+        }
+
+        running = true;
+        tailClient = redisConnectionManager.createDedicatedNodeDirectoryClient(streamKey, blockMillis + config.getGeneralTimeout());
+        final String initialOffset = offset;
+        tailThread = new Thread(() -> tail(initialOffset), "orbit-redis-membership-stream-" + clusterName);
+        tailThread.setDaemon(true);
+        tailThread.start();
+    }
+
+    @Override
+    public synchronized CompletableFuture<?> publish(final RedisClusterHeartBeat heartBeat)
+    {
+        final LettuceClient<String, Object> client = directoryClient();
+        final long digest = heartBeat.getViewDigest() * 31 + RedisGossipMembershipBackend.announcement(heartBeat);
+        final boolean changed = ! appended || digest != lastAppendedDigest;
+        appended = true;
+        lastAppendedDigest = digest;
+
+        final CompletableFuture<?> result = client.zaddAfterServerTime(livenessKey, livenessTimeToLiveMillis, localNodeId)
+                .thenCompose(added ->
+                {
+                    // A new member means we had expired: the cluster has presumed us dead, and appending brings us back.
+                    if ( changed || added > 0 )
+                    {
+                        return append(client, heartBeat);
+                    }
+                    return CompletableFuture.completedFuture(null);
+                })
+                .whenComplete((ignored, e) ->
+                {
+                    if ( e == null )
+                    {
+                        heartBeatReceiver.accept(heartBeat);
+                    }
+                    else
+                    {
+                        logger.error("Failed to publish heartbeat to '{}'", streamKey, e);
+                        forceAppend();
+                    }
+                });
+
+        final long now = System.nanoTime();
+        if ( now - nextSweepNanos >= 0 )
+        {
+            final long runningNodes = Math.max(1, clusterTracker.getNodeTrackers().values().stream()
+                    .filter(tracker -> tracker.getNodeState() == NodeState.RUNNING)
+                    .count());
+            final double jitter = 0.5 + ThreadLocalRandom.current().nextDouble();
+            nextSweepNanos = now + (long) (TimeUnit.MILLISECONDS.toNanos(config.getStreamSweepIntervalMillis()) * runningNodes * jitter);
+            sweepExpiredNodes(client);
+        }
+        return result;
+    }
+
+    @Override
+    public void shutdown()
+    {
+        running = false;
+        if ( tailThread != null )
+        {
+            tailThread.interrupt();
+        }
+        if ( tailClient != null )
+        {
+            tailClient.shutdown();
+        }
+
+        // Our STOPPED heartbeat is already in the stream; nodes joining from now on don't need to hear about us.
+        final LettuceClient<String, Object> client = directoryClient();
+        try
+        {
+            CompletableFuture.allOf(
+                    client.commands().zrem(livenessKey, localNodeId).toCompletableFuture(),
+                    client.commands().hdel(snapshotKey, localNodeId).toCompletableFuture())
+                    .get(config.getGeneralTimeout(), TimeUnit.MILLISECONDS);
+        }
+        catch (Exception e)
+        {
+            logger.warn("Failed to remove '{}' from the membership snapshot", localNodeId, e);
+        }
+    }
+
+    private LettuceClient<String, Object> directoryClient()
+    {
+        // The stream, snapshot and liveness keys live together, so that the snapshot is always written first.
+        return redisConnectionManager.getShardedNodeDirectoryClient(streamKey);
+    }
+
+    private CompletableFuture<String> append(final LettuceClient<String, Object> client, final RedisClusterHeartBeat heartBeat)
+    {
+        return client.commands().hset(snapshotKey, localNodeId, heartBeat).toCompletableFuture()
+                .thenCompose(ignored -> client.xadd(streamKey, config.getStreamMaxLength(), Collections.singletonMap(HEARTBEAT_FIELD, heartBeat)));
+    }
+
+    private synchronized void forceAppend()
+    {
+        appended = false;
+    }
+
+    /**
+     * Removes the nodes whose liveness deadline has passed, and records their expiry. The removal is atomic, so only
+     * one sweeping node records each expiry.
+     */
+    private void sweepExpiredNodes(final LettuceClient<String, Object> client)
+    {
+        client.zremBeforeServerTime(livenessKey, localNodeId)
+                .thenAccept(expired ->
+                {
+                    for ( final Object member : expired )
+                    {
+                        final String nodeId = String.valueOf(member);
+                        expire(client, nodeId).exceptionally(e ->
+                        {
+                            logger.error("Failed to expire node '{}'", nodeId, e);
+                            return null;
+                        });
+                    }
+                })
+                .exceptionally(e ->
+                {
+                    logger.error("Failed to sweep '{}'", livenessKey, e);
+                    return null;
+                });
+    }
+
+    private CompletableFuture<String> expire(final LettuceClient<String, Object> client, final String nodeId)
+    {
+        return client.commands().hdel(snapshotKey, nodeId).toCompletableFuture()
+                .thenCompose(ignored -> client.xadd(streamKey, config.getStreamMaxLength(), Collections.singletonMap(EXPIRED_FIELD, nodeId)));
+    }
+
+    /**
+     * Delivers the heartbeats in the snapshot; returns the id of the last stream entry the snapshot covers.
+     */
+    private CompletableFuture<String> readSnapshot()
+    {
+        final LettuceClient<String, Object> client = directoryClient();
+        return client.xrevrange(streamKey, 1).thenCompose(last ->
+        {
+            final String offset = last.isEmpty() ? "0-0" : last.get(0).getId();
+            return client.commands().hgetall(snapshotKey).toCompletableFuture().thenApply(snapshot ->
+            {
+                for ( final Object heartBeat : snapshot.values() )
+                {
+                    if ( heartBeat instanceof RedisClusterHeartBeat )
+                    {
+                        heartBeatReceiver.accept((RedisClusterHeartBeat) heartBeat);
+                    }
+                }
+                return offset;
+            });
+        });
+    }
+
+    private void tail(final String initialOffset)
+    {
+        String offset = initialOffset;
+        while ( running )
+        {
+            try
+            {
+                final List<RedisStreamEntry<Object>> entries = tailClient.xread(streamKey, offset, READ_COUNT, blockMillis)
+                        .get(blockMillis + config.getGeneralTimeout(), TimeUnit.MILLISECONDS);
+                for ( final RedisStreamEntry<Object> entry : entries )
+                {
+                    offset = entry.getId();
+                    receiveEntry(entry.getFields());
+                }
+                if ( entries.size() >= READ_COUNT )
+                {
+                    // We are falling behind, and may fall off the end of the trimmed stream: catch up from the snapshot.
+                    offset = readSnapshot().get(config.getGeneralTimeout(), TimeUnit.MILLISECONDS);
+                }
+            }
+            catch (InterruptedException e)
+            {
+                return;
+            }
+            catch (Exception e)
+            {
+                if ( running )
+                {
+                    logger.error("Failed to read '{}' after '{}'", streamKey, offset, e);
+                    try
+                    {
+                        Thread.sleep(config.getReconnectionTimeout());
+                    }
+                    catch (InterruptedException interrupted)
+                    {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    private void receiveEntry(final Map<String, Object> fields)
+    {
+        final Object heartBeat = fields.get(HEARTBEAT_FIELD);
+        if ( heartBeat instanceof RedisClusterHeartBeat )
+        {
+            heartBeatReceiver.accept((RedisClusterHeartBeat) heartBeat);
+        }
+
+        final NodeAddress expired = parseNodeId(fields.get(EXPIRED_FIELD));
+        if ( expired == null )
+        {
+            return;
+        }
+        if ( expired.equals(localAddress) )
+        {
+            logger.warn("Node '{}' was presumed dead by the cluster; announcing it again", localNodeId);
+            forceAppend();
+        }
+        else
+        {
+            clusterTracker.expireLease(expired);
+        }
+    }
+
+    static NodeAddress parseNodeId(final Object nodeId)
+    {
+        if ( nodeId == null )
+        {
+            return null;
+        }
+        try
+        {
+            return new NodeAddressImpl(UUID.fromString(String.valueOf(nodeId)));
+        }
+        catch (IllegalArgumentException e)
+        {
+            return null;
+        }
+    }
+}
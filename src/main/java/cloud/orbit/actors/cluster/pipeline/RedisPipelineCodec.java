@@ -0,0 +1,219 @@
+/*
+ Copyright (C) 2018 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package cloud.orbit.actors.cluster.pipeline;
+
+import io.lettuce.core.codec.RedisCodec;
+import io.lettuce.core.codec.ToByteBufEncoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * A <code>RedisPipelineCodec</code> wraps another codec and runs the configured <code>RedisPipelineStep</code>s over
+ * every encoded value: <code>write</code> in order when encoding, <code>read</code> in reverse order when decoding.
+ * Keys are passed through untouched.
+ *
+ * Values smaller than <code>minimumSizeBytes</code> skip the steps entirely, since compressing a few bytes costs more
+ * than it saves. Each value is therefore prefixed with a header: the magic bytes <code>"OPL"</code> and a single byte
+ * recording whether the steps were applied.
+ *
+ * Before the steps were run, values were written by the wrapped codec as is. Values without the magic are decoded
+ * that way, so directory entries and in-flight messages from older nodes stay readable across an upgrade.
+ */
+public class RedisPipelineCodec<K, V> implements RedisCodec<K, V>, ToByteBufEncoder<K, V>
+{
+    private static final byte RAW = 0;
+    private static final byte PIPELINED = 1;
+
+    private static final byte[] MAGIC = { 'O', 'P', 'L' };
+    private static final int HEADER_SIZE = MAGIC.length + 1;
+
+    private final RedisCodec<K, V> codec;
+    private final List<RedisPipelineStep> pipelineSteps;
+    private final int minimumSizeBytes;
+
+    public RedisPipelineCodec(final RedisCodec<K, V> codec, final List<RedisPipelineStep> pipelineSteps, final int minimumSizeBytes)
+    {
+        this.codec = codec;
+        this.pipelineSteps = pipelineSteps;
+        this.minimumSizeBytes = minimumSizeBytes;
+    }
+
+    @Override
+    public K decodeKey(final ByteBuffer bytes)
+    {
+        return codec.decodeKey(bytes);
+    }
+
+    @Override
+    public V decodeValue(final ByteBuffer bytes)
+    {
+        if (!hasMagic(bytes))
+        {
+            return codec.decodeValue(bytes);
+        }
+        bytes.position(bytes.position() + MAGIC.length);
+        if (bytes.get() == RAW)
+        {
+            return codec.decodeValue(bytes);
+        }
+
+        ByteBuf buf = Unpooled.wrappedBuffer(bytes);
+        try
+        {
+            for (int i = pipelineSteps.size() - 1; i >= 0; --i)
+            {
+                buf = pipelineSteps.get(i).read(buf);
+            }
+            return codec.decodeValue(buf.nioBuffer());
+        }
+        finally
+        {
+            buf.release();
+        }
+    }
+
+    private static boolean hasMagic(final ByteBuffer bytes)
+    {
+        if (bytes.remaining() < HEADER_SIZE)
+        {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; ++i)
+        {
+            if (bytes.get(bytes.position() + i) != MAGIC[i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public ByteBuffer encodeKey(final K key)
+    {
+        return codec.encodeKey(key);
+    }
+
+    @Override
+    public ByteBuffer encodeValue(final V value)
+    {
+        final ByteBuffer encoded = codec.encodeValue(value);
+        if (encoded.remaining() < minimumSizeBytes)
+        {
+            final ByteBuffer bytes = ByteBuffer.allocate(HEADER_SIZE + encoded.remaining());
+            bytes.put(MAGIC);
+            bytes.put(RAW);
+            bytes.put(encoded);
+            bytes.flip();
+            return bytes;
+        }
+
+        final ByteBuf buf = write(Unpooled.wrappedBuffer(encoded));
+        try
+        {
+            final ByteBuffer bytes = ByteBuffer.allocate(HEADER_SIZE + buf.readableBytes());
+            bytes.put(MAGIC);
+            bytes.put(PIPELINED);
+            buf.readBytes(bytes);
+            bytes.flip();
+            return bytes;
+        }
+        finally
+        {
+            buf.release();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void encodeKey(final K key, final ByteBuf target)
+    {
+        if (codec instanceof ToByteBufEncoder)
+        {
+            ((ToByteBufEncoder<K, V>) codec).encodeKey(key, target);
+        }
+        else
+        {
+            target.writeBytes(codec.encodeKey(key));
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void encodeValue(final V value, final ByteBuf target)
+    {
+        final ByteBuf encoded;
+        if (codec instanceof ToByteBufEncoder)
+        {
+            encoded = ByteBufAllocator.DEFAULT.buffer(estimateSize(value));
+            ((ToByteBufEncoder<K, V>) codec).encodeValue(value, encoded);
+        }
+        else
+        {
+            encoded = Unpooled.wrappedBuffer(codec.encodeValue(value));
+        }
+
+        final boolean pipelined = encoded.readableBytes() >= minimumSizeBytes;
+        final ByteBuf buf = pipelined ? write(encoded) : encoded;
+        try
+        {
+            target.writeBytes(MAGIC);
+            target.writeByte(pipelined ? PIPELINED : RAW);
+            target.writeBytes(buf);
+        }
+        finally
+        {
+            buf.release();
+        }
+    }
+
+    private ByteBuf write(ByteBuf buf)
+    {
+        for (final RedisPipelineStep pipelineStep : pipelineSteps)
+        {
+            buf = pipelineStep.write(buf);
+        }
+        return buf;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public int estimateSize(final Object keyOrValue)
+    {
+        if (codec instanceof ToByteBufEncoder)
+        {
+            return HEADER_SIZE + ((ToByteBufEncoder<K, V>) codec).estimateSize(keyOrValue);
+        }
+        return HEADER_SIZE + minimumSizeBytes;
+    }
+}
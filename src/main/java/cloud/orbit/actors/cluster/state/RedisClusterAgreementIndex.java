@@ -0,0 +1,216 @@
+/*
+ Copyright (C) 2018 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package cloud.orbit.actors.cluster.state;
+
+import cloud.orbit.actors.NodeState;
+import cloud.orbit.actors.NodeType;
+import cloud.orbit.actors.cluster.NodeAddress;
+import cloud.orbit.actors.cluster.heartbeat.RedisClusterNodeView;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A <code>RedisClusterAgreementIndex</code> incrementally maintains what <code>RedisClusterTracker</code> needs to
+ * decide whether the cluster agrees on the local node's state, so that the check is O(1) instead of a scan over every
+ * node's views.
+ *
+ * A node is <em>rumoured</em> while at least one RUNNING node we track lists it as RUNNING. For each rumoured node we
+ * record how it sees the local node: not at all (unknown, or no view of us), or with some state and type. All updates
+ * must happen inside <code>beginUpdate</code> / <code>endUpdate</code> pairs while holding this object's lock.
+ */
+class RedisClusterAgreementIndex
+{
+    private final NodeAddress localAddress;
+    private final Map<NodeAddress, RedisClusterNodeTracker> nodeTrackers;
+
+    private final Map<NodeAddress, Integer> rumourCounts = new HashMap<>();
+    private final Map<NodeAddress, RedisClusterNodeView> rumouredViewsOfLocal = new HashMap<>(); // absent = unknown or no view
+
+    private int runningTrackers = 0;
+    private int unsyncedRunningTrackers = 0;
+    private int rumouredWithoutViewOfLocal = 0;
+    private final int[] rumouredByState = new int[NodeState.values().length];
+    private final int[] rumouredByType = new int[NodeType.values().length];
+
+    // whether the tracker being updated contributed rumours when the update began
+    private boolean updatingTrackerWasRunning;
+
+    RedisClusterAgreementIndex(final NodeAddress localAddress, final Map<NodeAddress, RedisClusterNodeTracker> nodeTrackers)
+    {
+        this.localAddress = localAddress;
+        this.nodeTrackers = nodeTrackers;
+    }
+
+    int getRunningTrackers()
+    {
+        return runningTrackers;
+    }
+
+    boolean agrees(final NodeState requiredNodeState, final NodeType requiredNodeType)
+    {
+        if ( unsyncedRunningTrackers > 0 || rumouredWithoutViewOfLocal > 0 )
+        {
+            return false;
+        }
+        final int rumoured = rumourCounts.size();
+        return (requiredNodeState == null || rumouredByState[requiredNodeState.ordinal()] == rumoured)
+                && (requiredNodeType == null || rumouredByType[requiredNodeType.ordinal()] == rumoured);
+    }
+
+    String describe()
+    {
+        return "rumoured=" + rumourCounts.size() + " withoutViewOfLocal=" + rumouredWithoutViewOfLocal
+                + " unsyncedRunning=" + unsyncedRunningTrackers;
+    }
+
+    void beginUpdate(final RedisClusterNodeTracker tracker)
+    {
+        updatingTrackerWasRunning = tracker.getNodeState() == NodeState.RUNNING;
+        if ( updatingTrackerWasRunning )
+        {
+            --runningTrackers;
+            if ( ! tracker.isNodeViewsSynced() )
+            {
+                --unsyncedRunningTrackers;
+            }
+        }
+    }
+
+    /** Called for every view that the tracker being updated adds, replaces or removes. */
+    void viewChanged(final RedisClusterNodeView oldView, final RedisClusterNodeView newView)
+    {
+        if ( ! updatingTrackerWasRunning )
+        {
+            return;
+        }
+        if ( newView != null && newView.getNodeState() == NodeState.RUNNING )
+        {
+            addRumour(newView.getNodeAddress());
+        }
+        if ( oldView != null && oldView.getNodeState() == NodeState.RUNNING )
+        {
+            removeRumour(oldView.getNodeAddress());
+        }
+    }
+
+    void endUpdate(final RedisClusterNodeTracker tracker, final boolean removed)
+    {
+        final boolean isRunning = ! removed && tracker.getNodeState() == NodeState.RUNNING;
+        if ( updatingTrackerWasRunning && ! isRunning )
+        {
+            tracker.getNodeViews().values().forEach(view -> viewChanged(view, null));
+        }
+        else if ( ! updatingTrackerWasRunning && isRunning )
+        {
+            updatingTrackerWasRunning = true;
+            tracker.getNodeViews().values().forEach(view -> viewChanged(null, view));
+        }
+
+        if ( isRunning )
+        {
+            ++runningTrackers;
+            if ( ! tracker.isNodeViewsSynced() )
+            {
+                ++unsyncedRunningTrackers;
+            }
+        }
+
+        // The tracker's own view of the local node may have changed, too.
+        refresh(tracker.getNodeAddress());
+    }
+
+    private void addRumour(final NodeAddress nodeAddress)
+    {
+        final int count = rumourCounts.merge(nodeAddress, 1, Integer::sum);
+        if ( count == 1 )
+        {
+            contribute(nodeAddress, 1);
+        }
+    }
+
+    private void removeRumour(final NodeAddress nodeAddress)
+    {
+        final Integer count = rumourCounts.get(nodeAddress);
+        if ( count == null )
+        {
+            return;
+        }
+        if ( count == 1 )
+        {
+            contribute(nodeAddress, -1);
+            rumourCounts.remove(nodeAddress);
+        }
+        else
+        {
+            rumourCounts.put(nodeAddress, count - 1);
+        }
+    }
+
+    private void refresh(final NodeAddress nodeAddress)
+    {
+        if ( rumourCounts.containsKey(nodeAddress) )
+        {
+            contribute(nodeAddress, -1);
+            contribute(nodeAddress, 1);
+        }
+    }
+
+    private void contribute(final NodeAddress nodeAddress, final int delta)
+    {
+        final RedisClusterNodeView viewOfLocal;
+        if ( delta > 0 )
+        {
+            final RedisClusterNodeTracker tracker = nodeTrackers.get(nodeAddress);
+            viewOfLocal = tracker == null ? null : tracker.getNodeViews().get(localAddress);
+            if ( viewOfLocal != null )
+            {
+                rumouredViewsOfLocal.put(nodeAddress, viewOfLocal);
+            }
+        }
+        else
+        {
+            viewOfLocal = rumouredViewsOfLocal.remove(nodeAddress);
+        }
+
+        if ( viewOfLocal == null )
+        {
+            rumouredWithoutViewOfLocal += delta;
+            return;
+        }
+        if ( viewOfLocal.getNodeState() != null )
+        {
+            rumouredByState[viewOfLocal.getNodeState().ordinal()] += delta;
+        }
+        if ( viewOfLocal.getNodeType() != null )
+        {
+            rumouredByType[viewOfLocal.getNodeType().ordinal()] += delta;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ Copyright (C) 2018 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package cloud.orbit.actors.cluster.state;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.ToLongFunction;
+
+/**
+ * A <code>RedisClusterDeadlineQueue</code> holds at most one deadline per node tracker, ordered by
+ * <code>System.nanoTime()</code> deadline. Deadlines are rescheduled lazily: receiving a heartbeat doesn't touch the
+ * queue, and when an entry comes due its real deadline is recomputed and it is requeued if that is still in the future.
+ * Each pass therefore only touches the entries that came due, not every node in the cluster.
+ *
+ * Not thread-safe; <code>RedisClusterTracker</code> guards it with its membership lock.
+ */
+class RedisClusterDeadlineQueue
+{
+    private final PriorityQueue<Entry> entries = new PriorityQueue<>(Comparator.comparingLong(entry -> entry.deadline));
+    private final Map<RedisClusterNodeTracker, Entry> scheduledEntries = new HashMap<>();
+    private final ToLongFunction<RedisClusterNodeTracker> deadlineFunction;
+
+    RedisClusterDeadlineQueue(final ToLongFunction<RedisClusterNodeTracker> deadlineFunction)
+    {
+        this.deadlineFunction = deadlineFunction;
+    }
+
+    /** Adds the tracker if it isn't already queued. */
+    void schedule(final RedisClusterNodeTracker tracker)
+    {
+        if ( ! scheduledEntries.containsKey(tracker) )
+        {
+            final Entry entry = new Entry(tracker, deadlineFunction.applyAsLong(tracker));
+            scheduledEntries.put(tracker, entry);
+            entries.add(entry);
+        }
+    }
+
+    void remove(final RedisClusterNodeTracker tracker)
+    {
+        // The queue entry itself is discarded when it comes due.
+        scheduledEntries.remove(tracker);
+    }
+
+    /** Removes and returns every tracker whose (recomputed) deadline is not after <code>now</code>. */
+    List<RedisClusterNodeTracker> pollExpired(final long now)
+    {
+        List<RedisClusterNodeTracker> expired = null;
+        Entry entry;
+        while ( (entry = entries.peek()) != null && now - entry.deadline >= 0 )
+        {
+            entries.poll();
+            if ( scheduledEntries.get(entry.tracker) != entry )
+            {
+                continue;
+            }
+
+            final long deadline = deadlineFunction.applyAsLong(entry.tracker);
+            if ( now - deadline < 0 )
+            {
+                entry.deadline = deadline;
+                entries.add(entry);
+                continue;
+            }
+
+            scheduledEntries.remove(entry.tracker);
+            if ( expired == null ) expired = new ArrayList<>();
+            expired.add(entry.tracker);
+        }
+        return expired == null ? new ArrayList<>(0) : expired;
+    }
+
+    private static class Entry
+    {
+        private final RedisClusterNodeTracker tracker;
+        private long deadline;
+
+        private Entry(final RedisClusterNodeTracker tracker, final long deadline)
+        {
+            this.tracker = tracker;
+            this.deadline = deadline;
+        }
+    }
+}
@@ -38,6 +38,10 @@ import cloud.orbit.actors.cluster.heartbeat.RedisClusterNodeView;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.LongFunction;
 
 /**
  * A <code>RedisClusterNodeTracker</code> is a mutable tracker that represents Node A's view of Node B and of Node B's
@@ -51,59 +55,208 @@ public class RedisClusterNodeTracker
     private NodeType nodeType;
     private NodeState nodeState;
     private String placementGroup;
-    private Set<String> hostableActorInterfaces;
+    private Set<String> hostableActorInterfaces; // null until the advertised set has been resolved
+    private long hostableActorInterfacesHash;
+    private long advertisedInterfacesHash;
 
 
     private long lastHeartBeatLocalTimestamp = -1;
+    private volatile long lastHeartBeatNanos = System.nanoTime(); // monotonic, used for failure detection
     private int lastHeartBeatSequenceNumber = -1;
+    private boolean lastHeartBeatAged = false; // the last heartbeat was applied late, e.g. from a snapshot
 
 
+    private int freshestSequenceNumber = -1; // the newest of our own and others' (gossiped) heartbeat receipts
     private int missedSequenceNumberCount = 0;
     private int longestMissedSequenceNumberStreak = 0;
+    private final RedisHeartBeatIntervalHistory heartBeatIntervalHistory;
 
-    private Map<NodeAddress, RedisClusterNodeView> nodeViews;
+    private Map<NodeAddress, RedisClusterNodeView> nodeViews = new ConcurrentHashMap<>();
+    private long nodeViewsDigest;
+    private volatile boolean nodeViewsSynced = false; // false until a full snapshot arrives, and again after a missed delta
 
 
-    public RedisClusterNodeTracker(final NodeAddress nodeAddress)
+    public RedisClusterNodeTracker(final NodeAddress nodeAddress, final int heartBeatIntervalWindowSize)
     {
         this.nodeAddress = nodeAddress;
+        this.heartBeatIntervalHistory = new RedisHeartBeatIntervalHistory(heartBeatIntervalWindowSize);
     }
 
-    public synchronized boolean receiveHeartBeat(final RedisClusterHeartBeat heartBeat) {
+    /**
+     * Applies a heartbeat from this node. <code>viewChangeListener</code> is told about every node view that is
+     * added (old view null), replaced, or removed (new view null).
+     */
+    public boolean receiveHeartBeat(
+            final RedisClusterHeartBeat heartBeat,
+            final LongFunction<Set<String>> hostableInterfacesResolver,
+            final BiConsumer<RedisClusterNodeView, RedisClusterNodeView> viewChangeListener) {
+        return receiveHeartBeat(heartBeat, 0, hostableInterfacesResolver, viewChangeListener);
+    }
+
+    /**
+     * Applies a heartbeat that was sent <code>ageNanos</code> ago, e.g. one read from a snapshot, as if it had arrived
+     * then. The gap to the next heartbeat isn't taken as a heartbeat interval, nor as missed heartbeats.
+     */
+    public synchronized boolean receiveHeartBeat(
+            final RedisClusterHeartBeat heartBeat,
+            final long ageNanos,
+            final LongFunction<Set<String>> hostableInterfacesResolver,
+            final BiConsumer<RedisClusterNodeView, RedisClusterNodeView> viewChangeListener) {
         // Discard any out-of-order heartbeats
         if ( heartBeat.getSequenceNumber() <= this.lastHeartBeatSequenceNumber ) {
             return false;
         }
 
-        this.lastHeartBeatLocalTimestamp = System.currentTimeMillis();
+        final long now = System.nanoTime() - ageNanos;
+        final boolean follows = this.lastHeartBeatSequenceNumber >= 0 && ! this.lastHeartBeatAged;
+        if ( follows )
+        {
+            this.heartBeatIntervalHistory.add(now - this.lastHeartBeatNanos);
+        }
+        this.lastHeartBeatLocalTimestamp = System.currentTimeMillis() - TimeUnit.NANOSECONDS.toMillis(ageNanos);
+        this.lastHeartBeatNanos = now;
+        this.lastHeartBeatAged = ageNanos > 0;
 
-        if ( this.lastHeartBeatSequenceNumber >= 0 )
+        if ( follows )
         {
             int expectedSequenceNumber = this.lastHeartBeatSequenceNumber + 1;
-            int missedSequenceNumbers = heartBeat.getSequenceNumber() - expectedSequenceNumber;
+            // Heartbeats that were coalesced away locally did arrive, so they don't count as missed.
+            int missedSequenceNumbers = Math.max(heartBeat.getSequenceNumber() - expectedSequenceNumber - heartBeat.getCoalescedHeartBeats(), 0);
             this.missedSequenceNumberCount += missedSequenceNumbers;
             this.longestMissedSequenceNumberStreak = Math.max(this.longestMissedSequenceNumberStreak, missedSequenceNumbers);
         }
 
+        final int lastAppliedSequenceNumber = this.lastHeartBeatSequenceNumber;
         this.lastHeartBeatSequenceNumber = heartBeat.getSequenceNumber();
+        this.freshestSequenceNumber = Math.max(this.freshestSequenceNumber, heartBeat.getSequenceNumber());
+
+        // Only resolve the hostable interfaces when the advertised hash changes. The resolver never blocks: a set it
+        // doesn't know yet is fetched in the background and applied by receiveHostableInterfaces, and until then the
+        // old set (if any) stays in place.
+        this.advertisedInterfacesHash = heartBeat.getHostableInterfacesHash();
+        boolean interfacesChanged = false;
+        if ( this.hostableActorInterfaces == null || this.hostableActorInterfacesHash != this.advertisedInterfacesHash )
+        {
+            final Set<String> resolvedInterfaces = hostableInterfacesResolver.apply(this.advertisedInterfacesHash);
+            if ( resolvedInterfaces != null )
+            {
+                interfacesChanged = applyHostableInterfaces(this.advertisedInterfacesHash, resolvedInterfaces);
+            }
+        }
 
         // The view is updated if (a) any node transitions CLIENT -> HOST, (b) any note transitions state, (c) any node
         // changes its advertised set of hostable actors. The cluster view is not sensitive to other node's cluster views.
         final boolean isViewUpdated = ! Objects.equals(this.nodeType, heartBeat.getNodeType())
                 || ! Objects.equals(this.nodeState, heartBeat.getNodeState())
                 || ! Objects.equals(this.placementGroup, heartBeat.getPlacementGroup())
-                || ! Objects.equals(this.hostableActorInterfaces, heartBeat.getHostableInterfaces());
+                || interfacesChanged;
 
         this.nodeName = heartBeat.getNodeName();
         this.nodeType = heartBeat.getNodeType();
         this.nodeState = heartBeat.getNodeState();
         this.placementGroup = heartBeat.getPlacementGroup();
-        this.hostableActorInterfaces = heartBeat.getHostableInterfaces();
-        this.nodeViews = heartBeat.getNodeViews();
+        applyNodeViews(heartBeat, lastAppliedSequenceNumber, viewChangeListener);
 
         return isViewUpdated;
     }
 
+    /**
+     * Applies an interface set that was resolved in the background, returning true if it changed this node's
+     * interfaces. Sets for a hash that this node no longer advertises are ignored.
+     */
+    public synchronized boolean receiveHostableInterfaces(final long hash, final Set<String> interfaces)
+    {
+        if ( this.lastHeartBeatSequenceNumber < 0 || hash != this.advertisedInterfacesHash
+                || (this.hostableActorInterfaces != null && this.hostableActorInterfacesHash == hash) )
+        {
+            return false;
+        }
+        return applyHostableInterfaces(hash, interfaces);
+    }
+
+    private boolean applyHostableInterfaces(final long hash, final Set<String> interfaces)
+    {
+        final boolean changed = ! Objects.equals(this.hostableActorInterfaces, interfaces);
+        this.hostableActorInterfaces = interfaces;
+        this.hostableActorInterfacesHash = hash;
+        return changed;
+    }
+
+    /**
+     * Notes that another node reported receiving heartbeat <code>sequenceNumber</code> from this node. When that's
+     * newer than anything we know of, it's as good a sign of life as receiving the heartbeat ourselves. Only used with
+     * gossip, where we rarely hear from most nodes directly.
+     */
+    public synchronized void receiveGossipedSequenceNumber(final int sequenceNumber)
+    {
+        if ( sequenceNumber > this.freshestSequenceNumber && this.nodeState == NodeState.RUNNING )
+        {
+            this.freshestSequenceNumber = sequenceNumber;
+            this.lastHeartBeatLocalTimestamp = System.currentTimeMillis();
+            this.lastHeartBeatNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Notes that this node still holds its lease; only used with leases, where we rarely hear from a node directly.
+     */
+    public synchronized void renewLease()
+    {
+        if ( this.nodeState == NodeState.RUNNING )
+        {
+            this.lastHeartBeatLocalTimestamp = System.currentTimeMillis();
+            this.lastHeartBeatNanos = System.nanoTime();
+        }
+    }
+
+    private void applyNodeViews(
+            final RedisClusterHeartBeat heartBeat,
+            final int lastAppliedSequenceNumber,
+            final BiConsumer<RedisClusterNodeView, RedisClusterNodeView> viewChangeListener)
+    {
+        if ( heartBeat.isFullSnapshot() )
+        {
+            final Map<NodeAddress, RedisClusterNodeView> previousViews = this.nodeViews;
+            this.nodeViews = new ConcurrentHashMap<>(heartBeat.getNodeViews());
+            this.nodeViews.values().forEach(view -> viewChangeListener.accept(previousViews.get(view.getNodeAddress()), view));
+            previousViews.values().stream()
+                    .filter(view -> ! this.nodeViews.containsKey(view.getNodeAddress()))
+                    .forEach(view -> viewChangeListener.accept(view, null));
+            this.nodeViewsDigest = heartBeat.getViewDigest();
+            this.nodeViewsSynced = true;
+            return;
+        }
+
+        // A delta only applies on top of exactly the heartbeat it was computed against.
+        if ( ! this.nodeViewsSynced || heartBeat.getBaseSequenceNumber() != lastAppliedSequenceNumber )
+        {
+            this.nodeViewsSynced = false;
+            return;
+        }
+
+        for ( final NodeAddress removedNode : heartBeat.getRemovedNodes() )
+        {
+            final RedisClusterNodeView removedView = this.nodeViews.remove(removedNode);
+            if ( removedView != null )
+            {
+                this.nodeViewsDigest -= removedView.digest();
+                viewChangeListener.accept(removedView, null);
+            }
+        }
+        for ( final RedisClusterNodeView view : heartBeat.getNodeViews().values() )
+        {
+            final RedisClusterNodeView previousView = this.nodeViews.put(view.getNodeAddress(), view);
+            if ( previousView != null )
+            {
+                this.nodeViewsDigest -= previousView.digest();
+            }
+            this.nodeViewsDigest += view.digest();
+            viewChangeListener.accept(previousView, view);
+        }
+
+        this.nodeViewsSynced = this.nodeViewsDigest == heartBeat.getViewDigest();
+    }
+
     public RedisClusterNodeView createHeartBeatClusterNodeView()
     {
         return new RedisClusterNodeView(
@@ -111,7 +264,7 @@ public class RedisClusterNodeTracker
                 this.nodeType,
                 this.nodeState,
                 this.lastHeartBeatLocalTimestamp,
-                this.lastHeartBeatSequenceNumber,
+                this.freshestSequenceNumber,
                 this.missedSequenceNumberCount,
                 this.longestMissedSequenceNumberStreak
         );
@@ -159,11 +312,26 @@ public class RedisClusterNodeTracker
         return hostableActorInterfaces;
     }
 
+    public boolean isHostableActorInterfacesResolved()
+    {
+        return hostableActorInterfaces != null;
+    }
+
     public long getLastHeartBeatLocalTimestamp()
     {
         return lastHeartBeatLocalTimestamp;
     }
 
+    public long getLastHeartBeatNanos()
+    {
+        return lastHeartBeatNanos;
+    }
+
+    public RedisHeartBeatIntervalHistory getHeartBeatIntervalHistory()
+    {
+        return heartBeatIntervalHistory;
+    }
+
     public int getLastHeartBeatSequenceNumber()
     {
         return lastHeartBeatSequenceNumber;
@@ -183,4 +351,9 @@ public class RedisClusterNodeTracker
     {
         return nodeViews;
     }
+
+    public boolean isNodeViewsSynced()
+    {
+        return nodeViewsSynced;
+    }
 }
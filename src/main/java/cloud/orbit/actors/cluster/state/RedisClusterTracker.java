@@ -37,19 +37,29 @@ import cloud.orbit.actors.cluster.ClusterNodeView;
 import cloud.orbit.actors.cluster.ClusterView;
 import cloud.orbit.actors.cluster.NodeAddress;
 import cloud.orbit.actors.cluster.RedisClusterConfig;
+import cloud.orbit.actors.cluster.RedisFailureDetector;
+import cloud.orbit.actors.cluster.RedisMembershipMode;
 import cloud.orbit.actors.cluster.heartbeat.RedisClusterHeartBeat;
 import cloud.orbit.actors.cluster.heartbeat.RedisClusterNodeView;
+import cloud.orbit.actors.cluster.impl.RedisHostableInterfaceRegistry;
 
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
+import java.util.function.LongFunction;
 
 import static java.util.Collections.emptySet;
 import static java.util.stream.Collectors.toMap;
@@ -65,6 +75,11 @@ public class RedisClusterTracker
     private final RedisClusterConfig config;
     private final NodeAddress localAddress;
     private final Set<String> hostableInterfaces;
+    private final long hostableInterfacesHash;
+
+    // resolves the hostable interface hashes carried by heartbeats without blocking (null if not known yet); by default
+    // only our own hash is known
+    private LongFunction<Set<String>> hostableInterfacesResolver;
 
     private String nodeName; // human-friendly node name supplied by the application layer via config, such as "hostname:port"
     private String placementGroup; // application-defined key used to select which nodes may activate new actors
@@ -74,10 +89,34 @@ public class RedisClusterTracker
 
     private volatile int sequenceNumber = 0;
 
+    // the node views sent in our previous heartbeat, which the next delta heartbeat is computed against
+    private Map<NodeAddress, RedisClusterNodeView> lastSentNodeViews = Collections.emptyMap();
+    private int lastSentSequenceNumber = -1;
+    private int heartBeatsSinceFullSnapshot = 0;
+    // per node, how many of our heartbeats it last reported missing; a new miss may have been a delta it now lacks
+    private final Map<NodeAddress, Integer> reportedMissedHeartBeats = new HashMap<>();
+
     // field contents updated by heartbeats
     // note: contains a mapping for `localAddress` -> our own heartbeats
     private final ConcurrentMap<NodeAddress, RedisClusterNodeTracker> nodeTrackers = new ConcurrentHashMap<>();
 
+    // guarded by its own lock, as are all structural changes to nodeTrackers and updates of the cluster view
+    private final RedisClusterAgreementIndex agreementIndex;
+
+    // failure detection and culling deadlines, guarded by the agreementIndex lock
+    private final RedisClusterDeadlineQueue deathDeadlines;
+    private final RedisClusterDeadlineQueue cullingDeadlines;
+
+    // with LEASE, nodes whose lease expired since the last scan for dead nodes
+    private final Set<NodeAddress> expiredLeases = ConcurrentHashMap.newKeySet();
+
+    // immutable; replaced (copy-on-write) only when some node's type, state, placement group or interfaces change
+    private volatile ClusterView clusterView = new ClusterView(new TreeMap<>());
+    private volatile long clusterViewVersion = 0;
+
+    // completed (and replaced) each time a heartbeat has been applied, so that joins can wait for agreement
+    private volatile CompletableFuture<Void> nextHeartBeat = new CompletableFuture<>();
+
 
     public RedisClusterTracker(
             final RedisClusterConfig config,
@@ -87,14 +126,80 @@ public class RedisClusterTracker
         this.config = config;
         this.localAddress = localAddress;
         this.hostableInterfaces = hostableInterfaces;
+        this.hostableInterfacesHash = RedisHostableInterfaceRegistry.hash(hostableInterfaces);
+        this.hostableInterfacesResolver = hash -> hash == this.hostableInterfacesHash ? hostableInterfaces : null;
+        this.agreementIndex = new RedisClusterAgreementIndex(localAddress, nodeTrackers);
+        final RedisPhiAccrualFailureDetector phiAccrualFailureDetector = config.getFailureDetector() == RedisFailureDetector.PHI_ACCRUAL
+                ? new RedisPhiAccrualFailureDetector(config.getPhiThreshold(), config.getPhiMinimumTimeoutMillis(), config.getForeignNodeDeathTimeoutMillis())
+                : null;
+        this.deathDeadlines = new RedisClusterDeadlineQueue(tracker ->
+        {
+            // We always judge our own liveness by the fixed (and shorter) local timeout.
+            if ( Objects.equals(tracker.getNodeAddress(), localAddress) )
+            {
+                return tracker.getLastHeartBeatNanos() + TimeUnit.MILLISECONDS.toNanos(config.getLocalNodeDeathTimeoutMillis());
+            }
+            if ( phiAccrualFailureDetector != null )
+            {
+                return tracker.getLastHeartBeatNanos() + phiAccrualFailureDetector.getTimeoutNanos(tracker);
+            }
+            return tracker.getLastHeartBeatNanos() + TimeUnit.MILLISECONDS.toNanos(config.getForeignNodeDeathTimeoutMillis());
+        });
+        this.cullingDeadlines = new RedisClusterDeadlineQueue(tracker -> tracker.getLastHeartBeatNanos()
+                + TimeUnit.MILLISECONDS.toNanos(config.getDeadNodeCullingDelayMillis()));
     }
 
-    public RedisClusterHeartBeat createHeartBeat () {
+    public synchronized RedisClusterHeartBeat createHeartBeat () {
         ++sequenceNumber;
 
         final Map<NodeAddress, RedisClusterNodeView> snapshotNodeViews = nodeTrackers.values().stream()
                 .map(RedisClusterNodeTracker::createHeartBeatClusterNodeView)
                 .collect(toMap(RedisClusterNodeView::getNodeAddress, Function.identity()));
+        final long viewDigest = RedisClusterNodeView.digest(snapshotNodeViews.values());
+
+        // Send a full snapshot periodically, and whenever a node we haven't told anybody about has appeared (it most
+        // likely just joined, and needs a full snapshot from us before it can apply our deltas).
+        // Without broadcast, a receiver rarely gets two of our heartbeats in a row, so deltas would be useless to it.
+        // Also resend everything as soon as some node reports missing a heartbeat of ours: it can't apply our deltas
+        // (and won't agree on membership changes) until it gets a full snapshot.
+        final boolean missedByPeer = receiveMissedHeartBeatReports();
+        final boolean sendFullSnapshot = lastSentSequenceNumber < 0
+                || config.getMembershipMode() != RedisMembershipMode.BROADCAST
+                || ++heartBeatsSinceFullSnapshot >= config.getFullHeartBeatInterval()
+                || missedByPeer
+                || ! lastSentNodeViews.keySet().containsAll(snapshotNodeViews.keySet());
+
+        final Map<NodeAddress, RedisClusterNodeView> nodeViews;
+        final Set<NodeAddress> removedNodes;
+        final int baseSequenceNumber;
+        if ( sendFullSnapshot )
+        {
+            nodeViews = snapshotNodeViews;
+            removedNodes = emptySet();
+            baseSequenceNumber = -1;
+            heartBeatsSinceFullSnapshot = 0;
+        }
+        else
+        {
+            nodeViews = new HashMap<>();
+            for ( final RedisClusterNodeView view : snapshotNodeViews.values() )
+            {
+                final RedisClusterNodeView lastSentView = lastSentNodeViews.get(view.getNodeAddress());
+                // Changed miss counts are sent too (they don't affect the digest), so that the nodes we missed
+                // heartbeats from learn of it, see above.
+                if ( lastSentView == null || lastSentView.digest() != view.digest()
+                        || lastSentView.getMissedSequenceNumbersCount() != view.getMissedSequenceNumbersCount() )
+                {
+                    nodeViews.put(view.getNodeAddress(), view);
+                }
+            }
+            removedNodes = new HashSet<>(lastSentNodeViews.keySet());
+            removedNodes.removeAll(snapshotNodeViews.keySet());
+            baseSequenceNumber = lastSentSequenceNumber;
+        }
+
+        lastSentNodeViews = snapshotNodeViews;
+        lastSentSequenceNumber = sequenceNumber;
 
         return new RedisClusterHeartBeat(
                 this.localAddress,
@@ -103,45 +208,230 @@ public class RedisClusterTracker
                 this.nodeState,
                 this.sequenceNumber,
                 this.placementGroup,
-                this.hostableInterfaces,
-                snapshotNodeViews
+                this.hostableInterfacesHash,
+                nodeViews,
+                baseSequenceNumber,
+                removedNodes,
+                viewDigest
         );
     }
 
+    /**
+     * Returns true if some node reports having missed more of our heartbeats than it did when we last checked.
+     */
+    private boolean receiveMissedHeartBeatReports()
+    {
+        boolean missed = false;
+        reportedMissedHeartBeats.keySet().retainAll(nodeTrackers.keySet());
+        for ( final RedisClusterNodeTracker tracker : nodeTrackers.values() )
+        {
+            final RedisClusterNodeView viewOfLocal = tracker.getNodeViews().get(localAddress);
+            if ( viewOfLocal == null || Objects.equals(tracker.getNodeAddress(), localAddress) )
+            {
+                continue;
+            }
+            final Integer previous = reportedMissedHeartBeats.put(tracker.getNodeAddress(), viewOfLocal.getMissedSequenceNumbersCount());
+            missed |= previous != null && viewOfLocal.getMissedSequenceNumbersCount() > previous;
+        }
+        return missed;
+    }
+
     public boolean receiveHeartBeat(final RedisClusterHeartBeat heartBeat)
     {
-        final RedisClusterNodeTracker tracker = this.nodeTrackers.computeIfAbsent(heartBeat.getNodeAddress(), RedisClusterNodeTracker::new);
-        return tracker.receiveHeartBeat(heartBeat);
+        return receiveHeartBeat(heartBeat, 0);
+    }
+
+    /**
+     * Applies a heartbeat that was sent <code>ageNanos</code> ago, e.g. one read from a snapshot. The node's death
+     * deadline counts from when it was sent, so that a node that crashed shortly before is presumed dead on time.
+     */
+    public boolean receiveHeartBeat(final RedisClusterHeartBeat heartBeat, final long ageNanos)
+    {
+        final boolean clusterViewChanged;
+        synchronized (agreementIndex)
+        {
+            final RedisClusterNodeTracker tracker = this.nodeTrackers.computeIfAbsent(heartBeat.getNodeAddress(),
+                    address -> new RedisClusterNodeTracker(address, config.getPhiWindowSize()));
+            agreementIndex.beginUpdate(tracker);
+            clusterViewChanged = tracker.receiveHeartBeat(heartBeat, ageNanos, hostableInterfacesResolver, agreementIndex::viewChanged);
+            agreementIndex.endUpdate(tracker, false);
+            if ( clusterViewChanged )
+            {
+                updateClusterView(tracker, false);
+            }
+
+            // No-ops unless the tracker is new, or was taken off the death queue when it stopped running. With leases
+            // (and the stream's liveness set), other nodes only die when their lease expires.
+            if ( tracker.getNodeState() == NodeState.RUNNING && ! isLeaseHeldElsewhere(tracker) )
+            {
+                deathDeadlines.schedule(tracker);
+            }
+            cullingDeadlines.schedule(tracker);
+
+            if ( config.getMembershipMode() == RedisMembershipMode.GOSSIP )
+            {
+                receiveGossipedSequenceNumbers(heartBeat);
+            }
+        }
+        signalHeartBeat();
+        return clusterViewChanged;
+    }
+
+    /**
+     * Applies an interface set that the resolver fetched in the background to every node advertising it, returning
+     * true if the cluster view changed.
+     */
+    public boolean receiveHostableInterfaces(final long hash, final Set<String> interfaces)
+    {
+        boolean clusterViewChanged = false;
+        synchronized (agreementIndex)
+        {
+            for ( final RedisClusterNodeTracker tracker : nodeTrackers.values() )
+            {
+                if ( tracker.receiveHostableInterfaces(hash, interfaces) )
+                {
+                    updateClusterView(tracker, false);
+                    clusterViewChanged = true;
+                }
+            }
+        }
+        return clusterViewChanged;
+    }
+
+    private boolean isLeaseHeldElsewhere(final RedisClusterNodeTracker tracker)
+    {
+        final RedisMembershipMode membershipMode = config.getMembershipMode();
+        return (membershipMode == RedisMembershipMode.LEASE || membershipMode == RedisMembershipMode.STREAM)
+                && ! Objects.equals(tracker.getNodeAddress(), localAddress);
+    }
+
+    /**
+     * Reports that a node's lease has expired (or was deleted); the node is presumed dead by the next
+     * <code>scanForDeadNodes</code>.
+     */
+    public void expireLease(final NodeAddress nodeAddress)
+    {
+        if ( ! Objects.equals(nodeAddress, localAddress) )
+        {
+            expiredLeases.add(nodeAddress);
+        }
+    }
+
+    /**
+     * Reconciles against the set of nodes holding a lease, as read at <code>readNanos</code>: holders are known to be
+     * alive, and running nodes without a lease that we haven't heard from since then have expired.
+     */
+    public void receiveLeaseHolders(final Set<NodeAddress> leaseHolders, final long readNanos)
+    {
+        for ( final RedisClusterNodeTracker tracker : nodeTrackers.values() )
+        {
+            if ( leaseHolders.contains(tracker.getNodeAddress()) )
+            {
+                tracker.renewLease();
+            }
+            else if ( tracker.getNodeState() == NodeState.RUNNING && tracker.getLastHeartBeatNanos() - readNanos < 0 )
+            {
+                expireLease(tracker.getNodeAddress());
+            }
+        }
+    }
+
+    private void receiveGossipedSequenceNumbers(final RedisClusterHeartBeat heartBeat)
+    {
+        // Our own liveness is only ever judged by our own heartbeats coming back to us.
+        for ( final RedisClusterNodeView view : heartBeat.getNodeViews().values() )
+        {
+            final RedisClusterNodeTracker tracker = this.nodeTrackers.get(view.getNodeAddress());
+            if ( tracker != null && ! Objects.equals(view.getNodeAddress(), localAddress) )
+            {
+                tracker.receiveGossipedSequenceNumber(view.getLastReceivedSequenceNumber());
+            }
+        }
+    }
+
+    private void signalHeartBeat()
+    {
+        final CompletableFuture<Void> received;
+        synchronized (this)
+        {
+            received = this.nextHeartBeat;
+            this.nextHeartBeat = new CompletableFuture<>();
+        }
+        received.complete(null);
+    }
+
+    /**
+     * Returns a future that completes once the next heartbeat has been applied. Callers should fetch the future before
+     * checking the condition they are waiting on, so that a heartbeat arriving in between isn't missed.
+     */
+    public CompletableFuture<Void> getNextHeartBeat()
+    {
+        return nextHeartBeat;
     }
 
+    /**
+     * Returns the current cluster view. The view is immutable and only rebuilt when it changes, so callers can compare
+     * <code>getClusterViewVersion()</code> to tell whether it changed.
+     */
     public ClusterView createClusterView()
     {
-        final SortedMap<NodeAddress, ClusterNodeView> sortedNodes = new TreeMap<>();
+        return clusterView;
+    }
 
-        nodeTrackers.values().stream()
-                .map(RedisClusterNodeTracker::createClusterNodeView)
-                .forEach(view -> sortedNodes.put(view.getNodeAddress(), view));
+    public long getClusterViewVersion()
+    {
+        return clusterViewVersion;
+    }
+
+    private void updateClusterView(final RedisClusterNodeTracker tracker, final boolean removed)
+    {
+        final SortedMap<NodeAddress, ClusterNodeView> sortedNodes = new TreeMap<>(clusterView.getNodes());
+
+        // Nodes that announced a graceful departure are dropped immediately rather than waiting to be culled. Nodes
+        // whose hostable interfaces haven't been resolved yet stay out of the view until they are.
+        if ( removed || tracker.getNodeState() == NodeState.STOPPED || ! tracker.isHostableActorInterfacesResolved() )
+        {
+            sortedNodes.remove(tracker.getNodeAddress());
+        }
+        else
+        {
+            sortedNodes.put(tracker.getNodeAddress(), tracker.createClusterNodeView());
+        }
 
-        return new ClusterView(sortedNodes);
+        this.clusterView = new ClusterView(sortedNodes);
+        ++this.clusterViewVersion;
     }
 
     public Set<NodeAddress> scanForDeadNodes ()
     {
-        final long foreignNodeDeathTimeout = config.getForeignNodeDeathTimeoutMillis();
-        final long localNodeDeathTimeout = config.getLocalNodeDeathTimeoutMillis();
-
         Set<NodeAddress> deadNodes = null;
 
-        final long now = System.currentTimeMillis();
-        for ( RedisClusterNodeTracker tracker : this.nodeTrackers.values() )
+        synchronized (agreementIndex)
         {
-            final long timeout = Objects.equals(tracker.getNodeAddress(), this.localAddress) ? localNodeDeathTimeout : foreignNodeDeathTimeout;
-            final long timeoutTimestamp = tracker.getLastHeartBeatLocalTimestamp() + timeout;
-            if ( now > timeoutTimestamp && tracker.getNodeState() == NodeState.RUNNING ) {
-                tracker.setNodeState(NodeState.PRESUMED_DEAD);
+            final List<RedisClusterNodeTracker> expired = deathDeadlines.pollExpired(System.nanoTime());
+            for ( final Iterator<NodeAddress> iterator = expiredLeases.iterator(); iterator.hasNext(); )
+            {
+                final RedisClusterNodeTracker tracker = nodeTrackers.get(iterator.next());
+                iterator.remove();
+                if ( tracker != null )
+                {
+                    expired.add(tracker);
+                }
+            }
 
-                if ( deadNodes == null ) deadNodes = new HashSet<>();
-                deadNodes.add(tracker.getNodeAddress());
+            // Trackers that aren't RUNNING simply drop out of the queue until their next heartbeat.
+            for ( final RedisClusterNodeTracker tracker : expired )
+            {
+                if ( tracker.getNodeState() == NodeState.RUNNING )
+                {
+                    agreementIndex.beginUpdate(tracker);
+                    tracker.setNodeState(NodeState.PRESUMED_DEAD);
+                    agreementIndex.endUpdate(tracker, false);
+                    updateClusterView(tracker, false);
+
+                    if ( deadNodes == null ) deadNodes = new HashSet<>();
+                    deadNodes.add(tracker.getNodeAddress());
+                }
             }
         }
 
@@ -150,11 +440,19 @@ public class RedisClusterTracker
 
     public boolean cullLongDeadNodes ()
     {
-        final long cullingTimeout = config.getDeadNodeCullingDelayMillis();
-        final long now = System.currentTimeMillis();
-        final long cullingThreshold = now - cullingTimeout;
-
-        return this.nodeTrackers.values().removeIf(tracker -> tracker.getLastHeartBeatLocalTimestamp() < cullingThreshold);
+        synchronized (agreementIndex)
+        {
+            final List<RedisClusterNodeTracker> expired = cullingDeadlines.pollExpired(System.nanoTime());
+            for ( final RedisClusterNodeTracker tracker : expired )
+            {
+                agreementIndex.beginUpdate(tracker);
+                this.nodeTrackers.remove(tracker.getNodeAddress());
+                agreementIndex.endUpdate(tracker, true);
+                updateClusterView(tracker, true);
+                deathDeadlines.remove(tracker);
+            }
+            return ! expired.isEmpty();
+        }
     }
 
     /** Note: only works after calling scanForDeadNodes 'recently' (timeout-based) */
@@ -201,65 +499,46 @@ public class RedisClusterTracker
         return haveEnoughLivingNodesForAgreement() && clusterAgreesThatLocalIs(NodeState.RUNNING, null);
     }
 
-    private boolean haveEnoughLivingNodesForAgreement () {
-        final long livingNodeCount = nodeTrackers.values().stream()
-                .filter(tracker -> tracker.getNodeState() == NodeState.RUNNING)
-                .count();
-
-        return livingNodeCount >= config.getMinNodesInCluster();
+    public boolean isLocalNodeInClusterAs(final NodeType nodeType)
+    {
+        return haveEnoughLivingNodesForAgreement() && clusterAgreesThatLocalIs(NodeState.RUNNING, nodeType);
     }
 
+    private boolean haveEnoughLivingNodesForAgreement () {
+        synchronized (agreementIndex)
+        {
+            return agreementIndex.getRunningTrackers() >= config.getMinNodesInCluster();
+        }
+    }
 
     private boolean clusterAgreesThatLocalIs ( final NodeState requiredNodeState, final NodeType requiredNodeType ) {
-        // Note: the same 'rumouredNodeAddress' will occur repeatedly -- once in each nodeTracker.
-        // An alternative approach here would be to extract all rumouredNodeAddresses into a Set<NodeAddress>, then
-        // run through and check each of those once instead of many times. However, that requires allocating a HashSet,
-        // so I assume that this will be faster.
-        for ( final RedisClusterNodeTracker tracker : nodeTrackers.values() ) {
-            if ( tracker.getNodeState() != NodeState.RUNNING ) {
-                continue;
+        // Every RUNNING node that any RUNNING node we've heard from believes is RUNNING must (a) be known to us, and
+        // (b) see us in the required state / type; and we must be in sync with every RUNNING node's views. The index
+        // keeps the counts needed to answer this without scanning every node's views.
+        synchronized (agreementIndex)
+        {
+            final boolean agrees = agreementIndex.agrees(requiredNodeState, requiredNodeType);
+            if ( ! agrees && logger.isDebugEnabled() )
+            {
+                logger.debug("clusterAgreesThatLocalIs {} {} -> FALSE ({})", requiredNodeState, requiredNodeType, agreementIndex.describe());
             }
+            return agrees;
+        }
+    }
 
-            for ( final RedisClusterNodeView view : tracker.getNodeViews().values() ) {
-                // Ignore any rumoured nodes that aren't believed to be RUNNING.
-                if ( view.getNodeState() != NodeState.RUNNING ) {
-                    continue;
-                }
-
-                final NodeAddress rumouredNodeAddress = view.getNodeAddress();
-                final RedisClusterNodeTracker rumouredNodeTracker = nodeTrackers.get(rumouredNodeAddress);
-
-                // Some node (B) that we (A) have heard from knows of a different node (C) that we (A) haven't heard from.
-                if ( rumouredNodeTracker == null )
-                {
-                    logger.debug("clusterAgreesThatLocalIs {} {} -> FALSE because we have no record of {}", requiredNodeState, requiredNodeType, rumouredNodeAddress);
-                    return false;
-                }
-
-                // How does node C see us? If C doesn't report seeing us yet, or doesn't see us with the required
-                // nodeState / nodeType, then we aren't officially in that state yet.
-                final RedisClusterNodeView viewOfLocal = rumouredNodeTracker.getNodeViews().get(localAddress);
-                if ( viewOfLocal == null )
-                {
-                    logger.debug("clusterAgreesThatLocalIs {} {} -> FALSE because {} does not see us", requiredNodeState, requiredNodeType, rumouredNodeAddress);
-                    return false;
-                }
-
-                if ( requiredNodeState != null && viewOfLocal.getNodeState() != requiredNodeState )
-                {
-                    logger.debug("clusterAgreesThatLocalIs {} {} -> FALSE because {} sees us as {}", requiredNodeState, requiredNodeType, rumouredNodeAddress, viewOfLocal.getNodeState());
-                    return false;
-                }
+    public Set<String> getHostableInterfaces()
+    {
+        return hostableInterfaces;
+    }
 
-                if ( requiredNodeType != null && viewOfLocal.getNodeType() != requiredNodeType )
-                {
-                    logger.debug("clusterAgreesThatLocalIs {} {} -> FALSE because {} sees us as {}", requiredNodeState, requiredNodeType, rumouredNodeAddress, viewOfLocal.getNodeType());
-                    return false;
-                }
-            }
-        }
+    public long getHostableInterfacesHash()
+    {
+        return hostableInterfacesHash;
+    }
 
-        return true;
+    public void setHostableInterfacesResolver(final LongFunction<Set<String>> hostableInterfacesResolver)
+    {
+        this.hostableInterfacesResolver = hostableInterfacesResolver;
     }
 
     public String getNodeName()
@@ -0,0 +1,86 @@
+/*
+ Copyright (C) 2018 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package cloud.orbit.actors.cluster.state;
+
+/**
+ * A <code>RedisHeartBeatIntervalHistory</code> is a fixed-size sliding window of the intervals between heartbeats
+ * received from one node, with running sums so that the mean and standard deviation are O(1).
+ */
+public class RedisHeartBeatIntervalHistory
+{
+    private final long[] intervals;
+    private int count = 0;
+    private int next = 0;
+    private double sum = 0;
+    private double sumOfSquares = 0;
+
+    public RedisHeartBeatIntervalHistory(final int windowSize)
+    {
+        this.intervals = new long[Math.max(windowSize, 1)];
+    }
+
+    public synchronized void add(final long interval)
+    {
+        if ( count == intervals.length )
+        {
+            final long evicted = intervals[next];
+            sum -= evicted;
+            sumOfSquares -= (double) evicted * evicted;
+        }
+        else
+        {
+            ++count;
+        }
+
+        intervals[next] = interval;
+        next = (next + 1) % intervals.length;
+        sum += interval;
+        sumOfSquares += (double) interval * interval;
+    }
+
+    public synchronized int getCount()
+    {
+        return count;
+    }
+
+    public synchronized double getMean()
+    {
+        return count == 0 ? 0 : sum / count;
+    }
+
+    public synchronized double getStandardDeviation()
+    {
+        if ( count == 0 )
+        {
+            return 0;
+        }
+        final double mean = sum / count;
+        return Math.sqrt(Math.max(sumOfSquares / count - mean * mean, 0));
+    }
+}
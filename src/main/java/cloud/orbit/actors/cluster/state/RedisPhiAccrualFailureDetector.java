@@ -0,0 +1,116 @@
+/*
+ Copyright (C) 2018 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package cloud.orbit.actors.cluster.state;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The <code>RedisPhiAccrualFailureDetector</code> turns a node's heartbeat inter-arrival history into a timeout.
+ *
+ * Following Hayashibara et al. (and Akka's approximation of the normal CDF), the suspicion level after a silence of
+ * <code>t</code> is <code>phi(t) = -log10(P(interval > t))</code>. Since <code>phi</code> only depends on
+ * <code>y = (t - mean) / stdDev</code>, the threshold is converted once into the <code>y</code> at which it is crossed,
+ * and a node's timeout is simply <code>mean + y * stdDev</code>. A node whose heartbeats are sometimes lost (see
+ * <code>longestMissedSequenceNumberStreak</code>) is additionally allowed to miss as many heartbeats in a row again.
+ * The result is clamped between the configured minimum timeout and the fixed foreign node death timeout.
+ */
+public class RedisPhiAccrualFailureDetector
+{
+    // Below this many samples the statistics are meaningless, so the fixed timeout applies.
+    private static final int MINIMUM_SAMPLES = 3;
+
+    // Keeps perfectly regular heartbeats (stdDev ~ 0) from producing a hair-trigger timeout.
+    private static final double MINIMUM_STANDARD_DEVIATION_RATIO = 0.1;
+
+    private final double thresholdDeviations;
+    private final long minimumTimeoutNanos;
+    private final long maximumTimeoutNanos;
+
+    public RedisPhiAccrualFailureDetector(final double phiThreshold, final long minimumTimeoutMillis, final long maximumTimeoutMillis)
+    {
+        this.thresholdDeviations = deviationsForPhi(phiThreshold);
+        this.minimumTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(minimumTimeoutMillis);
+        this.maximumTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(maximumTimeoutMillis, minimumTimeoutMillis));
+    }
+
+    /**
+     * Returns how long (in nanoseconds) after its last heartbeat the tracked node should be presumed dead.
+     */
+    public long getTimeoutNanos(final RedisClusterNodeTracker tracker)
+    {
+        final RedisHeartBeatIntervalHistory history = tracker.getHeartBeatIntervalHistory();
+        if ( history.getCount() < MINIMUM_SAMPLES )
+        {
+            return maximumTimeoutNanos;
+        }
+
+        final double mean = history.getMean();
+        final double standardDeviation = Math.max(history.getStandardDeviation(), mean * MINIMUM_STANDARD_DEVIATION_RATIO);
+        final double suspicionTimeout = mean + thresholdDeviations * standardDeviation;
+        final double lossTimeout = (tracker.getLongestMissedSequenceNumberStreak() + 1) * mean;
+
+        final long timeout = (long) Math.max(suspicionTimeout, lossTimeout);
+        return Math.min(Math.max(timeout, minimumTimeoutNanos), maximumTimeoutNanos);
+    }
+
+    /**
+     * Returns phi for a silence <code>y</code> standard deviations past the mean.
+     */
+    static double phi(final double y)
+    {
+        final double e = Math.exp(-y * (1.5976 + 0.070566 * y * y));
+        return -Math.log10(e / (1.0 + e));
+    }
+
+    /**
+     * Inverts <code>phi</code> by bisection; phi is monotonically increasing in y.
+     */
+    static double deviationsForPhi(final double phiThreshold)
+    {
+        double low = -10;
+        double high = 10;
+        while ( phi(high) < phiThreshold )
+        {
+            high *= 2;
+        }
+        for ( int i = 0; i < 100; ++i )
+        {
+            final double mid = (low + high) / 2;
+            if ( phi(mid) < phiThreshold )
+            {
+                low = mid;
+            }
+            else
+            {
+                high = mid;
+            }
+        }
+        return high;
+    }
+}
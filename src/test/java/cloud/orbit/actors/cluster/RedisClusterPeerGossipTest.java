@@ -0,0 +1,142 @@
+/*
+ Copyright (C) 2018 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package cloud.orbit.actors.cluster;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import cloud.orbit.actors.NodeState;
+import cloud.orbit.actors.NodeType;
+import cloud.orbit.actors.runtime.DefaultActorClassFinder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+public class RedisClusterPeerGossipTest
+{
+    private static final int NODE_COUNT = 8;
+
+    private final List<RedisClusterPeer> peers = new ArrayList<>();
+
+    @Test(timeout = 60_000)
+    @Category(IntegrationTest.class)
+    public void testGossipConverges() throws Exception
+    {
+        final String clusterName = "gossip-" + UUID.randomUUID();
+        final AtomicInteger pulses = new AtomicInteger();
+        final ScheduledExecutorService pulser = Executors.newSingleThreadScheduledExecutor();
+        pulser.scheduleAtFixedRate(() ->
+        {
+            joinedPeers().forEach(RedisClusterPeer::pulse);
+            pulses.incrementAndGet();
+        }, 100, 100, TimeUnit.MILLISECONDS);
+        try
+        {
+            for (int i = 0; i < NODE_COUNT; i++)
+            {
+                final RedisClusterPeer peer = createPeer();
+                peer.join(clusterName, "node" + i, NodeType.SERVER, "").join();
+                synchronized (peers)
+                {
+                    peers.add(peer);
+                }
+            }
+
+            final Set<NodeAddress> addresses = joinedPeers().stream().map(RedisClusterPeer::localAddress).collect(Collectors.toSet());
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            while (!isConverged(addresses))
+            {
+                Assert.assertTrue("Gossip did not converge", System.nanoTime() - deadline < 0);
+                Thread.sleep(50);
+            }
+
+            // Most nodes only hear from each other through gossip, and anti-entropy rounds are further apart than the
+            // death timeout; nobody may be presumed dead over the next few dozen pulses.
+            final int converged = pulses.get();
+            final long stableDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            while (pulses.get() - converged < 50)
+            {
+                Assert.assertTrue("Gossip lost a node after converging", isConverged(addresses));
+                Assert.assertTrue("Pulses stalled", System.nanoTime() - stableDeadline < 0);
+                Thread.sleep(50);
+            }
+        }
+        finally
+        {
+            pulser.shutdownNow();
+            joinedPeers().forEach(RedisClusterPeer::leave);
+        }
+    }
+
+    private boolean isConverged(final Set<NodeAddress> addresses)
+    {
+        for (final RedisClusterPeer peer : joinedPeers())
+        {
+            final ClusterView clusterView = peer.getLatestClusterView();
+            if (clusterView == null || !clusterView.getNodes().keySet().equals(addresses)
+                    || peer.getClusterTracker().getNodeTrackers().values().stream().anyMatch(tracker -> tracker.getNodeState() != NodeState.RUNNING))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private List<RedisClusterPeer> joinedPeers()
+    {
+        synchronized (peers)
+        {
+            return new ArrayList<>(peers);
+        }
+    }
+
+    private static RedisClusterPeer createPeer()
+    {
+        final RedisClusterPeer peer = new RedisClusterBuilder()
+                .actorClassFinder(new DefaultActorClassFinder())
+                .membershipMode(RedisMembershipMode.GOSSIP)
+                .gossipFanout(2)
+                .gossipAntiEntropyInterval(30)
+                // A stalled test machine must never trip the local node's lost-connection handling, which exits the JVM.
+                .localNodeDeathTimeoutMillis(60_000)
+                .foreignNodeDeathTimeoutMillis(1_500)
+                .build();
+        peer.registerViewListener(view -> {});
+        peer.registerMessageReceiver((from, message) -> {});
+        return peer;
+    }
+}
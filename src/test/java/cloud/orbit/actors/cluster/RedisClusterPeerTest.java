@@ -0,0 +1,107 @@
+/*
+ Copyright (C) 2018 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package cloud.orbit.actors.cluster;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import cloud.orbit.actors.cluster.impl.RedisMulticastMsg;
+import cloud.orbit.actors.runtime.DefaultActorClassFinder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+public class RedisClusterPeerTest
+{
+    @Test
+    public void testLocalShortCircuitIsOffByDefault() {
+        Assert.assertFalse(new RedisClusterConfig().getLocalMessageShortCircuit());
+    }
+
+    @Test
+    public void testLocalMessagesAreShortCircuited() {
+        final List<byte[]> received = new ArrayList<>();
+        final RedisClusterPeer peer = new RedisClusterBuilder()
+                .actorClassFinder(new DefaultActorClassFinder())
+                .localMessageShortCircuit(true)
+                .inboundDispatchInline(true)
+                .build();
+        peer.registerMessageReceiver((from, message) ->
+        {
+            Assert.assertEquals(peer.localAddress(), from);
+            received.add(message);
+        });
+
+        // No connection has been made: the messages can only have been delivered locally.
+        final byte[] message = { 1, 2, 3 };
+        Assert.assertEquals(Long.valueOf(1), peer.sendMessageAsync(peer.localAddress(), message).join());
+        peer.sendMessageAsync(Collections.singleton(peer.localAddress()), message).join();
+
+        Assert.assertEquals(2, received.size());
+        Assert.assertSame(message, received.get(0));
+        Assert.assertEquals(2, peer.getMetrics().getLocalMessagesSent());
+        Assert.assertEquals(0, peer.getMetrics().getRemoteMessagesSent());
+        Assert.assertEquals(0, peer.getMetrics().getMulticastMessagesSent());
+    }
+
+    @Test
+    public void testMulticastIsOnlyDeliveredToRecipients() {
+        final List<byte[]> received = new ArrayList<>();
+        final RedisClusterPeer peer = new RedisClusterBuilder()
+                .actorClassFinder(new DefaultActorClassFinder())
+                .inboundDispatchInline(true)
+                .build();
+        peer.registerMessageReceiver((from, message) -> received.add(message));
+
+        final UUID sender = UUID.randomUUID();
+        peer.receiveMulticastMessage(new RedisMulticastMsg(sender, Arrays.asList(UUID.randomUUID(), UUID.randomUUID()), new byte[] { 1 }));
+        Assert.assertTrue(received.isEmpty());
+
+        peer.receiveMulticastMessage(new RedisMulticastMsg(sender, Arrays.asList(UUID.randomUUID(), peer.localAddress().asUUID()), new byte[] { 2 }));
+        Assert.assertEquals(1, received.size());
+        Assert.assertArrayEquals(new byte[] { 2 }, received.get(0));
+    }
+
+    @Test
+    public void testMetricsCount() {
+        final RedisClusterPeerMetrics metrics = new RedisClusterPeerMetrics();
+        metrics.incrementRemoteMessagesSent();
+        metrics.incrementRemoteMessagesSent();
+        metrics.incrementLocalMessagesSent();
+        metrics.incrementMulticastMessagesSent();
+
+        Assert.assertEquals(2, metrics.getRemoteMessagesSent());
+        Assert.assertEquals(1, metrics.getLocalMessagesSent());
+        Assert.assertEquals(1, metrics.getMulticastMessagesSent());
+        Assert.assertEquals("RedisClusterPeerMetrics{remoteMessagesSent=2, localMessagesSent=1, multicastMessagesSent=1}", metrics.toString());
+    }
+}
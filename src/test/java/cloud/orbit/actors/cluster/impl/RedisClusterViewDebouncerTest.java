@@ -0,0 +1,142 @@
+/*
+ Copyright (C) 2018 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package cloud.orbit.actors.cluster.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class RedisClusterViewDebouncerTest
+{
+    @Test
+    public void testWithoutWindowEveryChangeIsDeliveredInline() {
+        final AtomicInteger deliveries = new AtomicInteger();
+        final RedisClusterViewDebouncer debouncer = new RedisClusterViewDebouncer("test", 0, 1000, deliveries::incrementAndGet);
+        debouncer.viewChanged();
+        debouncer.viewChanged();
+        Assert.assertEquals(2, deliveries.get());
+    }
+
+    @Test
+    public void testBurstIsDeliveredOnce() throws InterruptedException {
+        final AtomicInteger deliveries = new AtomicInteger();
+        final RedisClusterViewDebouncer debouncer = new RedisClusterViewDebouncer("test", 200, 5000, deliveries::incrementAndGet);
+        try
+        {
+            for ( int i = 0; i < 5; i++ )
+            {
+                debouncer.viewChanged();
+            }
+            Assert.assertEquals(0, deliveries.get());
+
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while ( deliveries.get() == 0 )
+            {
+                Assert.assertTrue("The burst was never delivered", System.nanoTime() - deadline < 0);
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(1, deliveries.get());
+        }
+        finally
+        {
+            debouncer.shutdown();
+        }
+    }
+
+    @Test
+    public void testLongBurstIsDeliveredByTheMaximumDelay() throws InterruptedException {
+        final AtomicLong firstDeliveryNanos = new AtomicLong();
+        final RedisClusterViewDebouncer debouncer = new RedisClusterViewDebouncer("test", 200, 400,
+                () -> firstDeliveryNanos.compareAndSet(0, System.nanoTime()));
+        try
+        {
+            // Changes keep coming faster than the window, for well over the maximum delay.
+            final long firstChangeNanos = System.nanoTime();
+            long lastChangeNanos = firstChangeNanos;
+            for ( int i = 0; i < 100; i++ )
+            {
+                lastChangeNanos = System.nanoTime();
+                debouncer.viewChanged();
+                Thread.sleep(50);
+            }
+
+            final long delivered = firstDeliveryNanos.get();
+            Assert.assertNotEquals("Nothing was delivered during the burst", 0, delivered);
+            Assert.assertTrue("Delivered only after the burst ended", delivered - lastChangeNanos < 0);
+            // Generous, so that a slow machine doesn't fail the test; the burst lasts for five seconds or more.
+            Assert.assertTrue("Delivered long after the maximum delay",
+                    TimeUnit.NANOSECONDS.toMillis(delivered - firstChangeNanos) <= 400 + 2_000);
+        }
+        finally
+        {
+            debouncer.shutdown();
+        }
+    }
+
+    @Test
+    public void testFailedUrgentDeliveryIsLogged() {
+        final RedisClusterViewDebouncer debouncer = new RedisClusterViewDebouncer("test", 200, 5000, () ->
+        {
+            throw new IllegalStateException("test");
+        });
+        try
+        {
+            debouncer.viewChanged();
+            debouncer.deliverNow();
+            Assert.assertFalse(debouncer.isDeliveryScheduled());
+        }
+        finally
+        {
+            debouncer.shutdown();
+        }
+    }
+
+    @Test
+    public void testDeliverNowSkipsTheWindow() {
+        final AtomicInteger deliveries = new AtomicInteger();
+        final RedisClusterViewDebouncer debouncer = new RedisClusterViewDebouncer("test", 200, 5000, deliveries::incrementAndGet);
+        try
+        {
+            debouncer.viewChanged();
+            Assert.assertTrue(debouncer.isDeliveryScheduled());
+            debouncer.deliverNow();
+            Assert.assertEquals(1, deliveries.get());
+
+            // The pending delivery was folded into the urgent one.
+            Assert.assertFalse(debouncer.isDeliveryScheduled());
+        }
+        finally
+        {
+            debouncer.shutdown();
+        }
+    }
+}
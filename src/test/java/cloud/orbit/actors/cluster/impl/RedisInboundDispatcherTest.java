@@ -0,0 +1,104 @@
+/*
+ Copyright (C) 2018 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package cloud.orbit.actors.cluster.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class RedisInboundDispatcherTest
+{
+    @Test
+    public void testPerSenderOrdering() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try
+        {
+            final RedisInboundDispatcher dispatcher = new RedisInboundDispatcher(2, 8, executor);
+            final int senderCount = 5;
+            final int messageCount = 1000;
+            final List<UUID> senders = new ArrayList<>();
+            final List<List<Integer>> received = new ArrayList<>();
+            for (int i = 0; i < senderCount; i++)
+            {
+                senders.add(UUID.randomUUID());
+                received.add(Collections.synchronizedList(new ArrayList<>()));
+            }
+
+            final CountDownLatch latch = new CountDownLatch(senderCount * messageCount);
+            for (int m = 0; m < messageCount; m++)
+            {
+                for (int s = 0; s < senderCount; s++)
+                {
+                    final int sender = s;
+                    final int message = m;
+                    dispatcher.dispatch(senders.get(s), () ->
+                    {
+                        received.get(sender).add(message);
+                        latch.countDown();
+                    });
+                }
+            }
+
+            Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+            for (final List<Integer> messages : received)
+            {
+                Assert.assertEquals(messageCount, messages.size());
+                for (int m = 0; m < messageCount; m++)
+                {
+                    Assert.assertEquals(m, messages.get(m).intValue());
+                }
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testInlineDispatchSurvivesFailures() {
+        final RedisInboundDispatcher dispatcher = new RedisInboundDispatcher(1, 1, null);
+        final List<Integer> received = new ArrayList<>();
+        final UUID sender = UUID.randomUUID();
+
+        dispatcher.dispatch(sender, () -> received.add(1));
+        dispatcher.dispatch(sender, () -> { throw new IllegalStateException("expected"); });
+        dispatcher.dispatch(sender, () -> received.add(2));
+
+        Assert.assertEquals(2, received.size());
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ Copyright (C) 2018 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package cloud.orbit.actors.cluster.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import cloud.orbit.actors.NodeState;
+import cloud.orbit.actors.NodeType;
+import cloud.orbit.actors.cluster.NodeAddress;
+import cloud.orbit.actors.cluster.NodeAddressImpl;
+import cloud.orbit.actors.cluster.heartbeat.RedisClusterHeartBeat;
+import cloud.orbit.actors.cluster.heartbeat.RedisClusterNodeView;
+import cloud.orbit.actors.cluster.impl.lettuce.RedisChannelFilterCodec;
+import cloud.orbit.actors.cluster.impl.lettuce.RedisMessagingCodec;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+public class RedisMessagingCodecTest
+{
+    RedisMessagingCodec codec = new RedisMessagingCodec();
+
+    @Test
+    public void testEncodeDecodeMsg() {
+        final RedisMsg testRedisMsg = new RedisMsg(UUID.randomUUID(), randomBytes(20));
+
+        final ByteBuffer bb = codec.encodeValue(testRedisMsg);
+        Assert.assertEquals(codec.estimateSize(testRedisMsg), bb.remaining());
+
+        final RedisMsg decodedRedisMsg = (RedisMsg)codec.decodeValue(bb);
+        Assert.assertEquals(testRedisMsg, decodedRedisMsg);
+    }
+
+    @Test
+    public void testEncodeDecodeMsgByteBuf() {
+        final RedisMsg testRedisMsg = new RedisMsg(UUID.randomUUID(), randomBytes(20));
+
+        final ByteBuf buf = Unpooled.buffer(codec.estimateSize(testRedisMsg));
+        codec.encodeValue(testRedisMsg, buf);
+        final RedisMsg decodedRedisMsg = (RedisMsg)codec.decodeValue(buf.nioBuffer());
+
+        Assert.assertEquals(testRedisMsg, decodedRedisMsg);
+    }
+
+    @Test
+    public void testEncodeDecodeBatch() {
+        final RedisMsgBatch testBatch = new RedisMsgBatch(Arrays.asList(
+                new RedisMsg(UUID.randomUUID(), randomBytes(20)),
+                new RedisMsg(UUID.randomUUID(), new byte[0]),
+                new RedisMsg(UUID.randomUUID(), randomBytes(7))));
+
+        final ByteBuf buf = Unpooled.buffer();
+        codec.encodeValue(testBatch, buf);
+        Assert.assertEquals(codec.estimateSize(testBatch), buf.readableBytes());
+
+        Assert.assertEquals(testBatch, codec.decodeValue(buf.nioBuffer()));
+        Assert.assertEquals(testBatch, codec.decodeValue(codec.encodeValue(testBatch)));
+    }
+
+    @Test
+    public void testEncodeDecodeMulticast() {
+        final RedisMulticastMsg testMulticastMsg = new RedisMulticastMsg(UUID.randomUUID(),
+                Arrays.asList(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID()), randomBytes(33));
+
+        final ByteBuf buf = Unpooled.buffer();
+        codec.encodeValue(testMulticastMsg, buf);
+        Assert.assertEquals(codec.estimateSize(testMulticastMsg), buf.readableBytes());
+
+        Assert.assertEquals(testMulticastMsg, codec.decodeValue(buf.nioBuffer()));
+        Assert.assertEquals(testMulticastMsg, codec.decodeValue(codec.encodeValue(testMulticastMsg)));
+    }
+
+    @Test
+    public void testMulticastPayloadIsOnlyCopiedForRecipients() {
+        final UUID recipient = UUID.randomUUID();
+        final RedisMulticastMsg testMulticastMsg = new RedisMulticastMsg(UUID.randomUUID(),
+                Arrays.asList(recipient, UUID.randomUUID()), randomBytes(33));
+
+        final RedisMulticastMsg delivered = (RedisMulticastMsg) new RedisMessagingCodec(recipient).decodeValue(codec.encodeValue(testMulticastMsg));
+        Assert.assertEquals(testMulticastMsg, delivered);
+
+        final RedisMulticastMsg skipped = (RedisMulticastMsg) new RedisMessagingCodec(UUID.randomUUID()).decodeValue(codec.encodeValue(testMulticastMsg));
+        Assert.assertEquals(testMulticastMsg.getRecipientAddresses(), skipped.getRecipientAddresses());
+        Assert.assertEquals(0, skipped.getMessageContents().length);
+    }
+
+    @Test
+    public void testEncodeDecodeHeartBeat() {
+        final NodeAddress sender = new NodeAddressImpl(UUID.randomUUID());
+        final NodeAddress other = new NodeAddressImpl(UUID.randomUUID());
+        final Map<NodeAddress, RedisClusterNodeView> nodeViews = new HashMap<>();
+        nodeViews.put(sender, new RedisClusterNodeView(sender, NodeType.SERVER, NodeState.RUNNING, System.currentTimeMillis(), 42, 1, 1));
+        nodeViews.put(other, new RedisClusterNodeView(other, null, NodeState.PRESUMED_DEAD, -1, -1, 0, 0));
+        final RedisClusterHeartBeat heartBeat = new RedisClusterHeartBeat(sender, "host:1234", NodeType.SERVER,
+                NodeState.RUNNING, 43, null, 0x1234567890abcdefL, nodeViews, 40,
+                Collections.singleton(new NodeAddressImpl(UUID.randomUUID())), -7L);
+
+        final ByteBuf buf = Unpooled.buffer();
+        codec.encodeValue(heartBeat, buf);
+        Assert.assertTrue(buf.readableBytes() <= codec.estimateSize(heartBeat));
+
+        assertHeartBeatEquals(heartBeat, (RedisClusterHeartBeat) codec.decodeValue(buf.nioBuffer()));
+        assertHeartBeatEquals(heartBeat, (RedisClusterHeartBeat) codec.decodeValue(codec.encodeValue(heartBeat)));
+    }
+
+    private static void assertHeartBeatEquals(final RedisClusterHeartBeat expected, final RedisClusterHeartBeat actual) {
+        Assert.assertEquals(expected.getNodeAddress(), actual.getNodeAddress());
+        Assert.assertEquals(expected.getNodeName(), actual.getNodeName());
+        Assert.assertEquals(expected.getNodeType(), actual.getNodeType());
+        Assert.assertEquals(expected.getNodeState(), actual.getNodeState());
+        Assert.assertEquals(expected.getSequenceNumber(), actual.getSequenceNumber());
+        Assert.assertEquals(expected.getPlacementGroup(), actual.getPlacementGroup());
+        Assert.assertEquals(expected.getHostableInterfacesHash(), actual.getHostableInterfacesHash());
+        Assert.assertEquals(expected.getBaseSequenceNumber(), actual.getBaseSequenceNumber());
+        Assert.assertEquals(expected.getRemovedNodes(), actual.getRemovedNodes());
+        Assert.assertEquals(expected.getViewDigest(), actual.getViewDigest());
+        Assert.assertEquals(expected.getNodeViews().keySet(), actual.getNodeViews().keySet());
+        expected.getNodeViews().forEach((address, view) ->
+        {
+            final RedisClusterNodeView actualView = actual.getNodeViews().get(address);
+            Assert.assertEquals(view.getNodeType(), actualView.getNodeType());
+            Assert.assertEquals(view.getNodeState(), actualView.getNodeState());
+            Assert.assertEquals(view.getLastReceivedTimestamp(), actualView.getLastReceivedTimestamp());
+            Assert.assertEquals(view.getLastReceivedSequenceNumber(), actualView.getLastReceivedSequenceNumber());
+            Assert.assertEquals(view.getMissedSequenceNumbersCount(), actualView.getMissedSequenceNumbersCount());
+            Assert.assertEquals(view.getLongestMissedSequenceNumberStreak(), actualView.getLongestMissedSequenceNumberStreak());
+        });
+    }
+
+    @Test
+    public void testEncodeDecodeObject() {
+        final String testObject = "not a RedisMsg";
+
+        final ByteBuf buf = Unpooled.buffer();
+        codec.encodeValue(testObject, buf);
+
+        Assert.assertEquals(testObject, codec.decodeValue(buf.nioBuffer()));
+        Assert.assertEquals(testObject, codec.decodeValue(codec.encodeValue(testObject)));
+    }
+
+    @Test
+    public void testChannelFilterSkipsUnlistenedChannels() {
+        final RedisChannelFilterCodec<Object> filterCodec = new RedisChannelFilterCodec<>(codec, "listened"::equals);
+        final RedisMsg testRedisMsg = new RedisMsg(UUID.randomUUID(), randomBytes(20));
+
+        Assert.assertEquals("listened", filterCodec.decodeKey(codec.encodeKey("listened")));
+        Assert.assertEquals(testRedisMsg, filterCodec.decodeValue(codec.encodeValue(testRedisMsg)));
+
+        Assert.assertEquals("other", filterCodec.decodeKey(codec.encodeKey("other")));
+        Assert.assertNull(filterCodec.decodeValue(codec.encodeValue(testRedisMsg)));
+    }
+
+    private static byte[] randomBytes(final int size) {
+        final byte[] b = new byte[size];
+        new Random().nextBytes(b);
+        return b;
+    }
+}
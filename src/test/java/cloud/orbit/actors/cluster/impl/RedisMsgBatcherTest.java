@@ -0,0 +1,133 @@
+/*
+ Copyright (C) 2018 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package cloud.orbit.actors.cluster.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import cloud.orbit.actors.cluster.impl.lettuce.FstStringObjectCodec;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+public class RedisMsgBatcherTest
+{
+    private final List<Object> published = new ArrayList<>();
+
+    @Test
+    public void testEncodeDecodeBatch() {
+        final FstStringObjectCodec codec = new FstStringObjectCodec();
+        final byte[] b = new byte[20];
+        new Random().nextBytes(b);
+        final RedisMsgBatch testBatch = new RedisMsgBatch(Arrays.asList(
+                new RedisMsg(UUID.randomUUID(), b),
+                new RedisMsg(UUID.randomUUID(), new byte[0])));
+
+        final ByteBuffer bb = codec.encodeValue(testBatch);
+        final RedisMsgBatch decodedBatch = (RedisMsgBatch)codec.decodeValue(bb);
+
+        Assert.assertEquals(testBatch, decodedBatch);
+    }
+
+    @Test
+    public void testFullBatchIsPublishedAndForgotten() {
+        final RedisMsgBatcher batcher = new RedisMsgBatcher(this::publish, 60_000, 2, 0);
+        try
+        {
+            final CompletableFuture<Long> first = batcher.send("node", message());
+            Assert.assertEquals(1, batcher.getPendingBatchCount());
+            Assert.assertFalse(first.isDone());
+
+            batcher.send("node", message());
+            Assert.assertEquals(1, published.size());
+            Assert.assertTrue(published.get(0) instanceof RedisMsgBatch);
+            Assert.assertTrue(first.isDone());
+            Assert.assertEquals(0, batcher.getPendingBatchCount());
+
+            // A lone message is sent without an envelope.
+            batcher.send("other", message());
+            batcher.flush();
+            Assert.assertTrue(published.get(1) instanceof RedisMsg);
+            Assert.assertEquals(0, batcher.getPendingBatchCount());
+        }
+        finally
+        {
+            batcher.shutdown();
+        }
+    }
+
+    @Test
+    public void testPendingMessagesAreBounded() {
+        final RedisMsgBatcher batcher = new RedisMsgBatcher(this::publish, 60_000, 100, 3);
+        try
+        {
+            for ( int i = 0; i < 3; i++ )
+            {
+                batcher.send("node-" + i, message());
+            }
+            Assert.assertTrue(published.isEmpty());
+
+            batcher.send("node-3", message());
+            Assert.assertEquals(4, published.size());
+            Assert.assertEquals(0, batcher.getPendingBatchCount());
+        }
+        finally
+        {
+            batcher.shutdown();
+        }
+    }
+
+    @Test
+    public void testMessagesSentAfterShutdownArePublishedDirectly() {
+        final RedisMsgBatcher batcher = new RedisMsgBatcher(this::publish, 60_000, 100, 0);
+        batcher.send("node", message());
+        batcher.shutdown();
+        Assert.assertEquals(1, published.size());
+
+        final CompletableFuture<Long> late = batcher.send("node", message());
+        Assert.assertTrue(late.isDone());
+        Assert.assertEquals(2, published.size());
+        Assert.assertTrue(published.get(1) instanceof RedisMsg);
+        Assert.assertEquals(0, batcher.getPendingBatchCount());
+    }
+
+    private CompletableFuture<Long> publish(final String channelId, final Object msg) {
+        published.add(msg);
+        return CompletableFuture.completedFuture(1L);
+    }
+
+    private static RedisMsg message() {
+        return new RedisMsg(UUID.randomUUID(), new byte[] { 1, 2, 3 });
+    }
+}
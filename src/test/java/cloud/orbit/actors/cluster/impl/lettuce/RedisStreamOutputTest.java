@@ -0,0 +1,105 @@
+/*
+ Copyright (C) 2018 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package cloud.orbit.actors.cluster.impl.lettuce;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.lettuce.core.codec.StringCodec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+public class RedisStreamOutputTest
+{
+    @Test
+    public void testReadReply() {
+        // XREAD ... STREAMS stream 0-0 -> [[stream, [[1-0, [a, 1, b, 2]], [2-0, [a, 3]]]]]
+        final RedisStreamOutput<String, String> output = RedisStreamOutput.forRead(StringCodec.UTF8);
+        output.multi(1);
+        output.multi(2);
+        output.set(bytes("stream"));
+        output.multi(2);
+        output.multi(2);
+        output.set(bytes("1-0"));
+        output.multi(4);
+        output.set(bytes("a"));
+        output.set(bytes("1"));
+        output.set(bytes("b"));
+        output.set(bytes("2"));
+        output.multi(2);
+        output.set(bytes("2-0"));
+        output.multi(2);
+        output.set(bytes("a"));
+        output.set(bytes("3"));
+
+        final List<RedisStreamEntry<String>> entries = output.get();
+        Assert.assertEquals(2, entries.size());
+        Assert.assertEquals("1-0", entries.get(0).getId());
+        Assert.assertEquals("1", entries.get(0).getFields().get("a"));
+        Assert.assertEquals("2", entries.get(0).getFields().get("b"));
+        Assert.assertEquals("2-0", entries.get(1).getId());
+        Assert.assertEquals(1, entries.get(1).getFields().size());
+        Assert.assertEquals("3", entries.get(1).getFields().get("a"));
+    }
+
+    @Test
+    public void testEmptyReplies() {
+        // XREAD timing out replies with a null array, XREVRANGE on a missing stream with an empty one.
+        final RedisStreamOutput<String, String> read = RedisStreamOutput.forRead(StringCodec.UTF8);
+        read.multi(-1);
+        Assert.assertTrue(read.get().isEmpty());
+
+        final RedisStreamOutput<String, String> range = RedisStreamOutput.forRange(StringCodec.UTF8);
+        range.multi(0);
+        Assert.assertTrue(range.get().isEmpty());
+    }
+
+    @Test
+    public void testRangeReply() {
+        // XREVRANGE stream + - COUNT 1 -> [[5-1, [a, 1]]]
+        final RedisStreamOutput<String, String> output = RedisStreamOutput.forRange(StringCodec.UTF8);
+        output.multi(1);
+        output.multi(2);
+        output.set(bytes("5-1"));
+        output.multi(2);
+        output.set(bytes("a"));
+        output.set(bytes("1"));
+
+        final List<RedisStreamEntry<String>> entries = output.get();
+        Assert.assertEquals(1, entries.size());
+        Assert.assertEquals("5-1", entries.get(0).getId());
+        Assert.assertEquals("1", entries.get(0).getFields().get("a"));
+    }
+
+    private static ByteBuffer bytes(final String value) {
+        return ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
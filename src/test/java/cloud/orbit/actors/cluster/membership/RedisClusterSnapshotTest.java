@@ -0,0 +1,66 @@
+/*
+ Copyright (C) 2018 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package cloud.orbit.actors.cluster.membership;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import cloud.orbit.actors.NodeState;
+import cloud.orbit.actors.NodeType;
+import cloud.orbit.actors.cluster.NodeAddress;
+import cloud.orbit.actors.cluster.NodeAddressImpl;
+import cloud.orbit.actors.cluster.heartbeat.RedisClusterHeartBeat;
+import cloud.orbit.actors.cluster.heartbeat.RedisClusterHeartBeatCodec;
+import cloud.orbit.actors.cluster.heartbeat.RedisClusterNodeView;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.UUID;
+
+public class RedisClusterSnapshotTest
+{
+    @Test
+    public void testEntryIsWriteTimeAndCompactHeartBeat() {
+        final NodeAddress sender = new NodeAddressImpl(UUID.randomUUID());
+        final RedisClusterNodeView view = new RedisClusterNodeView(sender, NodeType.SERVER, NodeState.RUNNING, System.currentTimeMillis(), 7, 0, 0);
+        final RedisClusterHeartBeat heartBeat = new RedisClusterHeartBeat(sender, "host:1234", NodeType.SERVER,
+                NodeState.RUNNING, 7, "group", 42L, Collections.singletonMap(sender, view), -1, Collections.emptySet(), view.digest());
+
+        final ByteBuffer entry = ByteBuffer.wrap(RedisClusterSnapshot.encodeEntry(heartBeat, 1234L));
+        Assert.assertEquals(1234L, entry.getLong());
+
+        final RedisClusterHeartBeat decoded = RedisClusterHeartBeatCodec.decode(entry);
+        Assert.assertEquals(sender, decoded.getNodeAddress());
+        Assert.assertEquals(7, decoded.getSequenceNumber());
+        Assert.assertEquals("group", decoded.getPlacementGroup());
+        Assert.assertTrue(decoded.isFullSnapshot());
+        Assert.assertEquals(Collections.singleton(sender), decoded.getNodeViews().keySet());
+        Assert.assertFalse(entry.hasRemaining());
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ Copyright (C) 2018 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package cloud.orbit.actors.cluster.membership;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import cloud.orbit.actors.cluster.NodeAddressImpl;
+import cloud.orbit.actors.cluster.impl.RedisKeyGenerator;
+
+import java.util.UUID;
+
+public class RedisLeaseMembershipBackendTest
+{
+    @Test
+    public void testMergeKeyspaceNotificationFlags() {
+        Assert.assertEquals("K$x", RedisLeaseMembershipBackend.mergeKeyspaceNotificationFlags(""));
+        Assert.assertEquals("Kl$x", RedisLeaseMembershipBackend.mergeKeyspaceNotificationFlags("Kl$"));
+        Assert.assertEquals("AE K", RedisLeaseMembershipBackend.mergeKeyspaceNotificationFlags("AE "));
+        Assert.assertEquals("KA", RedisLeaseMembershipBackend.mergeKeyspaceNotificationFlags("KA"));
+    }
+
+    @Test
+    public void testParseLeaseKey() {
+        final UUID nodeId = UUID.randomUUID();
+        final String prefix = RedisKeyGenerator.leaseKey("cluster", "");
+
+        Assert.assertEquals(new NodeAddressImpl(nodeId),
+                RedisLeaseMembershipBackend.parseLeaseKey(prefix, RedisKeyGenerator.leaseKey("cluster", nodeId.toString())));
+        Assert.assertNull(RedisLeaseMembershipBackend.parseLeaseKey(prefix, RedisKeyGenerator.leaseKey("other", nodeId.toString())));
+        Assert.assertNull(RedisLeaseMembershipBackend.parseLeaseKey(prefix, prefix + "not-a-uuid"));
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ Copyright (C) 2018 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package cloud.orbit.actors.cluster.pipeline;
+
+import org.junit.Test;
+
+import cloud.orbit.actors.cluster.impl.RedisMsg;
+import cloud.orbit.actors.cluster.impl.lettuce.FstStringObjectCodec;
+import cloud.orbit.actors.cluster.impl.lettuce.RedisMessagingCodec;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RedisPipelineCodecTest
+{
+    private static final int MINIMUM_SIZE_BYTES = 64;
+
+    private final RedisPipelineCodec<String, Object> messagingCodec =
+            new RedisPipelineCodec<>(new RedisMessagingCodec(), RedisBasicPipeline.compressionOnlyPipeline(), MINIMUM_SIZE_BYTES);
+    private final RedisPipelineCodec<String, Object> objectCodec =
+            new RedisPipelineCodec<>(new FstStringObjectCodec(), RedisBasicPipeline.compressionOnlyPipeline(), MINIMUM_SIZE_BYTES);
+
+    @Test
+    public void testSmallValueSkipsPipeline() {
+        final RedisMsg testRedisMsg = new RedisMsg(UUID.randomUUID(), new byte[8]);
+
+        final ByteBuffer bb = messagingCodec.encodeValue(testRedisMsg);
+        assertEquals(4 + new RedisMessagingCodec().estimateSize(testRedisMsg), bb.remaining());
+        assertEquals(testRedisMsg, messagingCodec.decodeValue(bb));
+    }
+
+    @Test
+    public void testLargeValueIsCompressed() {
+        final RedisMsg testRedisMsg = new RedisMsg(UUID.randomUUID(), new byte[4096]);
+
+        final ByteBuf buf = Unpooled.buffer();
+        messagingCodec.encodeValue(testRedisMsg, buf);
+        assertTrue(buf.readableBytes() < 4096);
+
+        // Decode from a direct buffer, as handed to us by Lettuce.
+        final ByteBuffer direct = ByteBuffer.allocateDirect(buf.readableBytes());
+        buf.readBytes(direct);
+        direct.flip();
+        assertEquals(testRedisMsg, messagingCodec.decodeValue(direct));
+    }
+
+    @Test
+    public void testObjectValueRoundTrip() {
+        final String testValue = new String(new char[1024]).replace('\0', 'x');
+
+        final ByteBuffer bb = objectCodec.encodeValue(testValue);
+        assertTrue(bb.remaining() < 1024);
+        assertEquals(testValue, objectCodec.decodeValue(bb));
+
+        final ByteBuf buf = Unpooled.buffer();
+        objectCodec.encodeValue(testValue, buf);
+        assertEquals(testValue, objectCodec.decodeValue(buf.nioBuffer()));
+    }
+
+    @Test
+    public void testValueWithoutHeaderIsDecodedAsIs() {
+        final RedisMsg testRedisMsg = new RedisMsg(UUID.randomUUID(), new byte[4096]);
+        assertEquals(testRedisMsg, messagingCodec.decodeValue(new RedisMessagingCodec().encodeValue(testRedisMsg)));
+
+        final String testValue = "actor/clusterName:test";
+        assertEquals(testValue, objectCodec.decodeValue(new FstStringObjectCodec().encodeValue(testValue)));
+    }
+
+    @Test
+    public void testKeysAreUntouched() {
+        final String testKey = "node/clusterName:test|nodeId:1";
+
+        assertEquals(testKey, objectCodec.decodeKey(objectCodec.encodeKey(testKey)));
+
+        final ByteBuf buf = Unpooled.buffer();
+        messagingCodec.encodeKey(testKey, buf);
+        assertEquals(testKey, messagingCodec.decodeKey(buf.nioBuffer()));
+    }
+}
@@ -0,0 +1,331 @@
+/*
+ Copyright (C) 2018 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package cloud.orbit.actors.cluster.state;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import cloud.orbit.actors.NodeState;
+import cloud.orbit.actors.NodeType;
+import cloud.orbit.actors.cluster.NodeAddressImpl;
+import cloud.orbit.actors.cluster.RedisClusterConfig;
+import cloud.orbit.actors.cluster.RedisMembershipMode;
+import cloud.orbit.actors.cluster.heartbeat.RedisClusterHeartBeat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RedisClusterTrackerTest
+{
+    private final List<NodeAddressImpl> addresses = new ArrayList<>();
+    private final List<RedisClusterTracker> trackers = new ArrayList<>();
+    private final RedisClusterConfig config = new RedisClusterConfig();
+
+    @Before
+    public void setUp() {
+        config.setForeignNodeDeathTimeoutMillis(200);
+        for (int i = 0; i < 3; i++)
+        {
+            final NodeAddressImpl address = new NodeAddressImpl(UUID.randomUUID());
+            final RedisClusterTracker tracker = new RedisClusterTracker(config, address, Collections.emptySet());
+            tracker.setNodeState(NodeState.RUNNING);
+            tracker.setNodeType(NodeType.SERVER);
+            addresses.add(address);
+            trackers.add(tracker);
+        }
+    }
+
+    @Test
+    public void testDeltaHeartBeatsKeepViewsInSync() {
+        for (int round = 0; round < 3; round++)
+        {
+            exchangeHeartBeats(null);
+        }
+
+        final List<RedisClusterHeartBeat> heartBeats = exchangeHeartBeats(null);
+        for (final RedisClusterHeartBeat heartBeat : heartBeats)
+        {
+            Assert.assertFalse(heartBeat.isFullSnapshot());
+            Assert.assertTrue(heartBeat.getNodeViews().isEmpty());
+        }
+        for (final RedisClusterTracker tracker : trackers)
+        {
+            Assert.assertTrue(tracker.isLocalNodeInCluster());
+        }
+    }
+
+    @Test
+    public void testMissedDeltaBreaksAgreementUntilFullSnapshot() {
+        for (int round = 0; round < 3; round++)
+        {
+            exchangeHeartBeats(null);
+        }
+
+        final RedisClusterTracker receiver = trackers.get(0);
+        final RedisClusterTracker sender = trackers.get(1);
+        exchangeHeartBeats(sender);
+        exchangeHeartBeats(null);
+
+        final RedisClusterNodeTracker senderTracker = receiver.getNodeTrackers().get(addresses.get(1));
+        Assert.assertFalse(senderTracker.isNodeViewsSynced());
+        Assert.assertFalse(receiver.isLocalNodeInCluster());
+
+        // The sender's next full snapshot resynchronizes the receiver.
+        for (int round = 0; round < new RedisClusterConfig().getFullHeartBeatInterval(); round++)
+        {
+            exchangeHeartBeats(null);
+        }
+        Assert.assertTrue(senderTracker.isNodeViewsSynced());
+        Assert.assertTrue(receiver.isLocalNodeInCluster());
+    }
+
+    @Test
+    public void testMissedDeltaIsReportedAndAnsweredWithFullSnapshot() {
+        config.setFullHeartBeatInterval(1_000);
+        for (int round = 0; round < 3; round++)
+        {
+            exchangeHeartBeats(null);
+        }
+
+        final RedisClusterTracker receiver = trackers.get(0);
+        final RedisClusterTracker sender = trackers.get(1);
+        exchangeHeartBeats(sender);
+        exchangeHeartBeats(null);
+        Assert.assertFalse(receiver.isLocalNodeInCluster());
+
+        // The receiver reports the miss in its next heartbeat, and the sender answers with a full snapshot.
+        exchangeHeartBeats(null);
+        final List<RedisClusterHeartBeat> heartBeats = exchangeHeartBeats(null);
+        Assert.assertTrue(heartBeats.get(1).isFullSnapshot());
+        Assert.assertTrue(receiver.getNodeTrackers().get(addresses.get(1)).isNodeViewsSynced());
+        Assert.assertTrue(receiver.isLocalNodeInCluster());
+    }
+
+    @Test
+    public void testAgreementFollowsTypeChange() {
+        for (int round = 0; round < 3; round++)
+        {
+            exchangeHeartBeats(null);
+        }
+
+        final RedisClusterTracker local = trackers.get(2);
+        Assert.assertTrue(local.isLocalNodeInClusterAs(NodeType.SERVER));
+
+        // Other nodes only agree once they've heard about the change and told us so in their next heartbeat.
+        trackers.forEach(tracker -> tracker.setNodeType(NodeType.CLIENT));
+        exchangeHeartBeats(null);
+        Assert.assertTrue(local.isLocalNodeInClusterAs(NodeType.SERVER));
+        Assert.assertFalse(local.isLocalNodeInClusterAs(NodeType.CLIENT));
+        exchangeHeartBeats(null);
+        Assert.assertFalse(local.isLocalNodeInClusterAs(NodeType.SERVER));
+        Assert.assertTrue(local.isLocalNodeInClusterAs(NodeType.CLIENT));
+        Assert.assertTrue(local.isLocalNodeInCluster());
+    }
+
+    @Test
+    public void testSilentNodeIsPresumedDead() throws Exception {
+        exchangeHeartBeats(null);
+        exchangeHeartBeats(null);
+
+        final RedisClusterTracker silent = trackers.get(1);
+        for (int round = 0; round < 3; round++)
+        {
+            Thread.sleep(40);
+            exchangeHeartBeats(silent);
+            Assert.assertTrue(trackers.get(0).scanForDeadNodes().isEmpty());
+        }
+
+        Thread.sleep(150);
+        Assert.assertEquals(Collections.singleton(addresses.get(1)), trackers.get(0).scanForDeadNodes());
+        Assert.assertTrue(trackers.get(0).scanForDeadNodes().isEmpty());
+        Assert.assertEquals(NodeState.PRESUMED_DEAD, trackers.get(0).getNodeTrackers().get(addresses.get(1)).getNodeState());
+    }
+
+    @Test
+    public void testCoalescedDeltasApplyLikeTheOriginals() {
+        for (int round = 0; round < 3; round++)
+        {
+            exchangeHeartBeats(null);
+        }
+
+        final RedisClusterTracker receiver = trackers.get(0);
+        final RedisClusterTracker sender = trackers.get(1);
+        final RedisClusterTracker changed = trackers.get(2);
+
+        final RedisClusterHeartBeat first = sender.createHeartBeat();
+        changed.setNodeType(NodeType.CLIENT);
+        sender.receiveHeartBeat(changed.createHeartBeat());
+        final RedisClusterHeartBeat second = sender.createHeartBeat();
+        Assert.assertFalse(second.isFullSnapshot());
+        Assert.assertTrue(second.getNodeViews().containsKey(addresses.get(2)));
+
+        receiver.receiveHeartBeat(RedisClusterHeartBeat.coalesce(first, second));
+        final RedisClusterNodeTracker senderTracker = receiver.getNodeTrackers().get(addresses.get(1));
+        Assert.assertTrue(senderTracker.isNodeViewsSynced());
+        Assert.assertEquals(0, senderTracker.getMissedSequenceNumberCount());
+        Assert.assertEquals(NodeType.CLIENT, senderTracker.getNodeViews().get(addresses.get(2)).getNodeType());
+
+        // A stale heartbeat never replaces a newer one.
+        Assert.assertSame(second, RedisClusterHeartBeat.coalesce(second, first));
+    }
+
+    @Test
+    public void testGossipedSequenceNumbersKeepIndirectNodesAlive() throws Exception {
+        config.setMembershipMode(RedisMembershipMode.GOSSIP);
+        exchangeHeartBeats(null);
+        exchangeHeartBeats(null);
+
+        // Node 0 only ever hears about node 1 through node 2.
+        final RedisClusterTracker observer = trackers.get(0);
+        for (int round = 0; round < 6; round++)
+        {
+            Thread.sleep(50);
+            trackers.get(2).receiveHeartBeat(trackers.get(1).createHeartBeat());
+            final RedisClusterHeartBeat relay = trackers.get(2).createHeartBeat();
+            Assert.assertTrue(relay.isFullSnapshot());
+            observer.receiveHeartBeat(relay);
+            observer.receiveHeartBeat(observer.createHeartBeat());
+            Assert.assertTrue(observer.scanForDeadNodes().isEmpty());
+        }
+        Assert.assertEquals(NodeState.RUNNING, observer.getNodeTrackers().get(addresses.get(1)).getNodeState());
+    }
+
+    @Test
+    public void testLeaseHoldersOnlyDieWhenTheirLeaseExpires() throws Exception {
+        config.setMembershipMode(RedisMembershipMode.LEASE);
+        exchangeHeartBeats(null);
+
+        final RedisClusterTracker observer = trackers.get(0);
+        Thread.sleep(250);
+        observer.receiveHeartBeat(observer.createHeartBeat());
+        Assert.assertTrue(observer.scanForDeadNodes().isEmpty());
+
+        observer.receiveLeaseHolders(new HashSet<>(Arrays.asList(addresses.get(0), addresses.get(2))), System.nanoTime());
+        Assert.assertEquals(Collections.singleton(addresses.get(1)), observer.scanForDeadNodes());
+
+        observer.expireLease(addresses.get(2));
+        Assert.assertEquals(Collections.singleton(addresses.get(2)), observer.scanForDeadNodes());
+        Assert.assertTrue(observer.scanForDeadNodes().isEmpty());
+    }
+
+    @Test
+    public void testAgedHeartBeatDiesOnTimeAndDoesNotCountAsMissed() throws Exception {
+        final RedisClusterTracker observer = trackers.get(0);
+        final RedisClusterTracker crashed = trackers.get(1);
+        final RedisClusterTracker alive = trackers.get(2);
+        for (int round = 0; round < 5; round++)
+        {
+            crashed.createHeartBeat();
+            alive.createHeartBeat();
+        }
+
+        // Both entries were written 150ms of the 200ms death timeout ago; only the live node is heard from again.
+        observer.receiveHeartBeat(crashed.createHeartBeat(), TimeUnit.MILLISECONDS.toNanos(150));
+        observer.receiveHeartBeat(alive.createHeartBeat(), TimeUnit.MILLISECONDS.toNanos(150));
+        alive.createHeartBeat();
+        observer.receiveHeartBeat(alive.createHeartBeat());
+
+        Thread.sleep(100);
+        Assert.assertEquals(Collections.singleton(addresses.get(1)), observer.scanForDeadNodes());
+        final RedisClusterNodeTracker aliveTracker = observer.getNodeTrackers().get(addresses.get(2));
+        Assert.assertEquals(NodeState.RUNNING, aliveTracker.getNodeState());
+        Assert.assertEquals(0, aliveTracker.getMissedSequenceNumberCount());
+    }
+
+    @Test
+    public void testSlowInterfaceLookupNeitherBlocksHeartBeatsNorLeaksIntoTheView() throws Exception {
+        final RedisClusterTracker observer = trackers.get(0);
+        final CountDownLatch lookupFinished = new CountDownLatch(1);
+        final AtomicInteger lookups = new AtomicInteger();
+        observer.setHostableInterfacesResolver(hash ->
+        {
+            // Stands in for a slow Redis fetch: the set only arrives well after the heartbeats that asked for it.
+            if (lookups.getAndIncrement() == 0)
+            {
+                CompletableFuture.runAsync(() ->
+                {
+                    sleep(500);
+                    observer.receiveHostableInterfaces(hash, Collections.emptySet());
+                    lookupFinished.countDown();
+                });
+            }
+            return null;
+        });
+
+        for (int round = 0; round < 3; round++)
+        {
+            exchangeHeartBeats(null);
+        }
+        Assert.assertEquals(1, lookupFinished.getCount());
+        Assert.assertTrue(observer.isLocalNodeInCluster());
+        Assert.assertTrue(observer.createClusterView().getNodes().isEmpty());
+
+        Assert.assertTrue(lookupFinished.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(new HashSet<>(addresses), observer.createClusterView().getNodes().keySet());
+    }
+
+    private static void sleep(final long millis)
+    {
+        try
+        {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Every tracker sends a heartbeat to every tracker (including itself); heartbeats from <code>lost</code> are dropped. */
+    private List<RedisClusterHeartBeat> exchangeHeartBeats(final RedisClusterTracker lost) {
+        final List<RedisClusterHeartBeat> heartBeats = new ArrayList<>();
+        for (final RedisClusterTracker tracker : trackers)
+        {
+            final RedisClusterHeartBeat heartBeat = tracker.createHeartBeat();
+            if (tracker != lost)
+            {
+                heartBeats.add(heartBeat);
+            }
+        }
+        for (final RedisClusterHeartBeat heartBeat : heartBeats)
+        {
+            trackers.forEach(tracker -> tracker.receiveHeartBeat(heartBeat));
+        }
+        return heartBeats;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ Copyright (C) 2018 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package cloud.orbit.actors.cluster.state;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import cloud.orbit.actors.cluster.NodeAddressImpl;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+public class RedisPhiAccrualFailureDetectorTest
+{
+    private final RedisPhiAccrualFailureDetector detector = new RedisPhiAccrualFailureDetector(8.0, 100, 10_000);
+
+    @Test
+    public void testPhiIsMonotonicAndInvertible()
+    {
+        double previous = Double.NEGATIVE_INFINITY;
+        for (double y = -3; y <= 6; y += 0.5)
+        {
+            final double phi = RedisPhiAccrualFailureDetector.phi(y);
+            Assert.assertTrue(phi > previous);
+            previous = phi;
+        }
+        final double y = RedisPhiAccrualFailureDetector.deviationsForPhi(8.0);
+        Assert.assertEquals(8.0, RedisPhiAccrualFailureDetector.phi(y), 1e-6);
+    }
+
+    @Test
+    public void testTimeoutFollowsHeartBeatIntervals()
+    {
+        final RedisClusterNodeTracker unknown = tracker();
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(10_000), detector.getTimeoutNanos(unknown));
+
+        final RedisClusterNodeTracker regular = tracker(1000, 1000, 1000, 1000, 1000);
+        final RedisClusterNodeTracker noisy = tracker(500, 1500, 700, 1300, 1000);
+        final long regularTimeout = detector.getTimeoutNanos(regular);
+        final long noisyTimeout = detector.getTimeoutNanos(noisy);
+        Assert.assertTrue(regularTimeout > TimeUnit.MILLISECONDS.toNanos(1000));
+        Assert.assertTrue(regularTimeout < TimeUnit.MILLISECONDS.toNanos(2000));
+        Assert.assertTrue(noisyTimeout > regularTimeout);
+
+        final RedisClusterNodeTracker slow = tracker(8000, 8000, 8000, 8000);
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(10_000), detector.getTimeoutNanos(slow));
+
+        final RedisClusterNodeTracker fast = tracker(1, 1, 1, 1);
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(100), detector.getTimeoutNanos(fast));
+    }
+
+    private static RedisClusterNodeTracker tracker(final long... intervalsMillis)
+    {
+        final RedisClusterNodeTracker tracker = new RedisClusterNodeTracker(new NodeAddressImpl(UUID.randomUUID()), 100);
+        for (final long interval : intervalsMillis)
+        {
+            tracker.getHeartBeatIntervalHistory().add(TimeUnit.MILLISECONDS.toNanos(interval));
+        }
+        return tracker;
+    }
+}